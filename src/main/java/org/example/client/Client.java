@@ -2,12 +2,17 @@ package org.example.client;
 
 import org.example.network.AuthRequest;
 import org.example.network.CommandRequest;
+import org.example.network.FrameCodec;
+import org.example.network.Handshake;
+import org.example.network.MessageCodec;
 import org.example.network.Response;
-import org.example.util.HashUtil;
+import org.example.network.SessionTicket;
 
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.net.Socket;
 import java.util.Scanner;
 
@@ -15,10 +20,12 @@ public class Client {
     private String host;
     private int port;
     private Socket socket;
-    private ObjectOutputStream outputStream;
-    private ObjectInputStream inputStream;
+    private DataOutputStream outputStream;
+    private DataInputStream inputStream;
+    private MessageCodec codec;
     private String username;
-    private String passwordHash;
+    // Токен сессии из ответа на вход или регистрацию
+    private String sessionToken;
 
     public Client(String host, int port) {
         this.host = host;
@@ -29,8 +36,10 @@ public class Client {
         try {
             // Устанавливаем соединение с сервером
             socket = new Socket(host, port);
-            outputStream = new ObjectOutputStream(socket.getOutputStream());
-            inputStream = new ObjectInputStream(socket.getInputStream());
+            outputStream = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            inputStream = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            codec = MessageCodec.forVersion(
+                    Handshake.negotiateAsClient(inputStream, outputStream, Handshake.preferredVersion()));
 
             System.out.println("Подключено к серверу " + host + ":" + port);
 
@@ -91,17 +100,16 @@ public class Client {
             AuthRequest registerRequest = new AuthRequest(newUsername, newPassword);
             registerRequest.setIsRegistration(true);
 
-            outputStream.writeObject(registerRequest);
-            outputStream.flush();
+            FrameCodec.writeFrame(outputStream, codec, registerRequest);
 
             // Получаем ответ от сервера
-            Response response = (Response) inputStream.readObject();
+            Response response = (Response) FrameCodec.readFrame(inputStream, codec);
             if (response.isSuccess()) {
                 System.out.println(response.getMessage());
                 // После успешной регистрации автоматически входим
                 System.out.println("Автоматический вход...");
                 this.username = newUsername;
-                this.passwordHash = HashUtil.sha256(newPassword);
+                this.sessionToken = ((SessionTicket) response.getData()).getToken();
                 return true;
             } else {
                 System.err.println("Ошибка регистрации: " + response.getMessage());
@@ -120,17 +128,16 @@ public class Client {
             username = scanner.nextLine().trim();
             System.out.print("Введите пароль: ");
             String password = scanner.nextLine().trim();
-            passwordHash = HashUtil.sha256(password);
 
             // Отправляем запрос аутентификации
             AuthRequest authRequest = new AuthRequest(username, password);
-            outputStream.writeObject(authRequest);
-            outputStream.flush();
+            FrameCodec.writeFrame(outputStream, codec, authRequest);
 
             // Получаем ответ от сервера
-            Response response = (Response) inputStream.readObject();
+            Response response = (Response) FrameCodec.readFrame(inputStream, codec);
             if (response.isSuccess()) {
                 System.out.println(response.getMessage());
+                sessionToken = ((SessionTicket) response.getData()).getToken();
                 return true;
             } else {
                 System.err.println(response.getMessage());
@@ -177,9 +184,8 @@ public class Client {
                 }
 
                 // Отправляем команду на сервер
-                CommandRequest commandRequest = new CommandRequest(command, args, username, passwordHash);
-                outputStream.writeObject(commandRequest);
-                outputStream.flush();
+                CommandRequest commandRequest = new CommandRequest(command, args, sessionToken);
+                FrameCodec.writeFrame(outputStream, codec, commandRequest);
             }
         } catch (IOException e) {
             System.err.println("Ошибка отправки команды: " + e.getMessage());
@@ -324,7 +330,7 @@ public class Client {
     private void readResponses() {
         try {
             while (!socket.isClosed()) {
-                Object response = inputStream.readObject();
+                Object response = FrameCodec.readFrame(inputStream, codec);
                 if (response instanceof Response) {
                     Response resp = (Response) response;
                     if (resp.isSuccess()) {
@@ -3,6 +3,7 @@ package org.example.client.gui;
 import org.example.client.gui.components.ProductTable;
 import org.example.client.gui.components.VisualizationPanel;
 import org.example.client.gui.dialogs.FilterDialog;
+import org.example.client.gui.dialogs.LoginDialog;
 import org.example.client.gui.dialogs.ProductEditDialog;
 import org.example.client.gui.dialogs.SortDialog;
 import org.example.client.gui.models.ProductTableModel;
@@ -11,6 +12,7 @@ import org.example.client.network.GuiClient;
 import org.example.client.state.SessionState;
 import org.example.data.Product;
 import org.example.data.User;
+import org.example.network.ProductDelta;
 
 import javax.swing.*;
 import javax.swing.event.ChangeEvent;
@@ -47,9 +49,9 @@ public class MainWindow extends JFrame implements ChangeListener, Localization.L
         this.client = GuiClient.getInstance();
         this.sessionState = SessionState.getInstance();
 
+        // Начальный список придет в ответ на подписку из initComponents
         initComponents();
         setupWindow();
-        loadProducts();
 
         sessionState.addChangeListener(this);
         localization.addLocaleChangeListener(this);
@@ -104,7 +106,13 @@ public class MainWindow extends JFrame implements ChangeListener, Localization.L
         setContentPane(mainPanel);
         setJMenuBar(menuBar);
 
-        client.startPeriodicUpdates(5, this::loadProducts);
+        // Сервер сам присылает изменения коллекции, периодический опрос не нужен
+        client.subscribeToChanges(sessionState.getProductsEpoch(), sessionState.getProductsVersion(),
+                this::onProductsChanged, this::onProductsError);
+        // После переподключения подписка на сервере новая: продолжаем с последней полученной версии
+        client.setResumeListener(() -> client.subscribeToChanges(sessionState.getProductsEpoch(),
+                sessionState.getProductsVersion(), this::onProductsChanged, this::onProductsError));
+        client.setSessionExpiredListener(this::onSessionExpired);
     }
 
     private void setupMenuBar() {
@@ -309,17 +317,37 @@ public class MainWindow extends JFrame implements ChangeListener, Localization.L
     }
 
     private void loadProducts() {
-        client.requestProducts(
-                products -> {
-                    sessionState.setProducts(products);
-                    statusLabel.setText(localization.getString("status.lastUpdate") + new java.util.Date());
-                    statusLabel.setForeground(Color.GREEN);
-                },
-                error -> {
-                    statusLabel.setText(localization.getString("status.error") + error);
-                    statusLabel.setForeground(Color.RED);
-                }
-        );
+        // Запрашиваем только изменения после последней полученной версии
+        client.requestChanges(sessionState.getProductsEpoch(), sessionState.getProductsVersion(),
+                this::onProductsChanged, this::onProductsError);
+    }
+
+    private void onProductsChanged(ProductDelta delta) {
+        sessionState.applyDelta(delta);
+        statusLabel.setText(localization.getString("status.lastUpdate") + new java.util.Date());
+        statusLabel.setForeground(Color.GREEN);
+    }
+
+    private void onProductsError(String error) {
+        statusLabel.setText(localization.getString("status.error") + error);
+        statusLabel.setForeground(Color.RED);
+    }
+
+    // Сервер не продолжил сессию после переподключения: повторный вход и новая подписка
+    private void onSessionExpired() {
+        sessionState.setCurrentUser(null);
+        setVisible(false);
+        JOptionPane.showMessageDialog(null,
+                localization.getString("error.sessionExpired"),
+                localization.getString("error.title"),
+                JOptionPane.WARNING_MESSAGE);
+        if (!LoginDialog.showLoginDialog(null)) {
+            System.exit(0);
+        }
+        updateUserInfo();
+        client.subscribeToChanges(sessionState.getProductsEpoch(), sessionState.getProductsVersion(),
+                this::onProductsChanged, this::onProductsError);
+        setVisible(true);
     }
 
     private void showLanguageDialog() {
@@ -405,7 +433,7 @@ public class MainWindow extends JFrame implements ChangeListener, Localization.L
 
                 if (result == JOptionPane.YES_OPTION) {
                     String[] args = {String.valueOf(selectedProduct.getId())};
-                    client.sendCommandRequest("remove_by_id", args, sessionState.getCurrentUser(),
+                    client.sendCommandRequest("remove_by_id", args,
                             response -> {
                                 if (response.isSuccess()) {
                                     JOptionPane.showMessageDialog(this,
@@ -469,7 +497,7 @@ public class MainWindow extends JFrame implements ChangeListener, Localization.L
                 options[0]);
 
         if (result == JOptionPane.YES_OPTION) {
-            client.sendCommandRequest("clear", new String[0], sessionState.getCurrentUser(),
+            client.sendCommandRequest("clear", new String[0],
                     response -> {
                         if (response.isSuccess()) {
                             JOptionPane.showMessageDialog(this,
@@ -493,7 +521,7 @@ public class MainWindow extends JFrame implements ChangeListener, Localization.L
 
         if (result == JFileChooser.APPROVE_OPTION) {
             String[] args = {fileChooser.getSelectedFile().getAbsolutePath()};
-            client.sendCommandRequest("execute_script", args, sessionState.getCurrentUser(),
+            client.sendCommandRequest("execute_script", args,
                     response -> {
                         if (response.isSuccess()) {
                             JOptionPane.showMessageDialog(this,
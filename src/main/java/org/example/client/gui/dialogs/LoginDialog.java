@@ -4,6 +4,7 @@ import org.example.client.gui.resources.Localization;
 import org.example.client.network.GuiClient;
 import org.example.client.state.SessionState;
 import org.example.data.User;
+import org.example.network.SessionTicket;
 import org.example.util.HashUtil;
 
 import javax.swing.*;
@@ -186,7 +187,7 @@ public class LoginDialog extends JDialog implements Localization.LocaleChangeLis
             registerButton.setEnabled(true);
 
             if (response.isSuccess()) {
-                int userId = (Integer) response.getData();
+                int userId = ((SessionTicket) response.getData()).getUserId();
                 User user = new User(userId, username, HashUtil.sha256(password));
                 sessionState.setCurrentUser(user);
                 dispose();
@@ -214,7 +214,7 @@ public class ProductEditDialog extends JDialog {
             String[] args = existingProduct == null ?
                     getAddArgs(product) : getUpdateArgs(product);
 
-            client.sendCommandRequest(command, args, sessionState.getCurrentUser(), response -> {
+            client.sendCommandRequest(command, args, response -> {
                 if (response.isSuccess()) {
                     // ИСПОЛЬЗУЕМ НОВЫЕ КЛЮЧИ ЛОКАЛИЗАЦИИ
                     String message = existingProduct == null ?
@@ -132,6 +132,7 @@ public class Localization {
                     {"error.selectProduct", "Выберите продукт"},
                     {"error.editOtherUser", "Вы можете редактировать только свои продукты"},
                     {"error.deleteOtherUser", "Вы можете удалять только свои продукты"},
+                    {"error.sessionExpired", "Сессия истекла, войдите снова"},
                     {"confirm.title", "Подтверждение"},
                     {"confirm.delete", "Вы уверены, что хотите удалить этот продукт?"},
                     {"confirm.clear", "Вы уверены, что хотите очистить все продукты?"},
@@ -256,6 +257,7 @@ public class Localization {
                     {"error.selectProduct", "Selecione um produto"},
                     {"error.editOtherUser", "Você só pode editar seus próprios produtos"},
                     {"error.deleteOtherUser", "Você só pode remover seus próprios produtos"},
+                    {"error.sessionExpired", "A sessão expirou, faça login novamente"},
                     {"confirm.title", "Confirmação"},
                     {"confirm.delete", "Tem certeza que deseja remover este produto?"},
                     {"confirm.clear", "Tem certeza que deseja limpar todos os produtos?"},
@@ -378,6 +380,7 @@ public class Localization {
                     {"error.selectProduct", "Wybierz produkt"},
                     {"error.editOtherUser", "Możesz edytować tylko swoje produkty"},
                     {"error.deleteOtherUser", "Możesz usuwać tylko swoje produkty"},
+                    {"error.sessionExpired", "Sesja wygasła, zaloguj się ponownie"},
                     {"confirm.title", "Potwierdzenie"},
                     {"confirm.delete", "Czy na pewno chcesz usunąć ten produkt?"},
                     {"confirm.clear", "Czy na pewno chcesz wyczyścić wszystkie produkty?"},
@@ -503,6 +506,7 @@ public class Localization {
                     {"error.selectProduct", "Select a product"},
                     {"error.editOtherUser", "You can only edit your own products"},
                     {"error.deleteOtherUser", "You can only remove your own products"},
+                    {"error.sessionExpired", "Session expired, please log in again"},
                     {"confirm.title", "Confirmation"},
                     {"confirm.delete", "Are you sure you want to remove this product?"},
                     {"confirm.clear", "Are you sure you want to clear all products?"},
@@ -1,31 +1,63 @@
 package org.example.client.network;
 
 import org.example.network.AuthRequest;
+import org.example.network.ChangesRequest;
 import org.example.network.CommandRequest;
+import org.example.network.FrameCodec;
+import org.example.network.Handshake;
+import org.example.network.MessageCodec;
+import org.example.network.ProductDelta;
+import org.example.network.ProductsRequest;
+import org.example.network.Request;
+import org.example.network.ResumeRequest;
+import org.example.network.SessionTicket;
+import org.example.network.SubscribeRequest;
 import org.example.network.Response;
 import org.example.data.Product;
-import org.example.data.User;
-import org.example.util.HashUtil;
 
 import javax.swing.*;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.net.Socket;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 
 public class GuiClient {
+    private static final long RESUME_TIMEOUT_SEC = 10;
     private static GuiClient instance;
-    private Socket socket;
-    private ObjectOutputStream outputStream;
-    private ObjectInputStream inputStream;
+    private volatile Socket socket;
+    private DataOutputStream outputStream;
+    private DataInputStream inputStream;
+    private MessageCodec codec;
     private ExecutorService executorService;
     private String host;
     private int port;
-    private boolean connected;
+    private volatile boolean connected;
+    // Запросы, отправленные на сервер и ожидающие ответа, по номеру запроса
+    private final Map<Long, CompletableFuture<Response>> pendingRequests = new ConcurrentHashMap<>();
+    private final AtomicLong nextCorrelationId = new AtomicLong();
+    private final Object writeLock = new Object();
+    // Получатель изменений, которые сервер присылает по подписке
+    private volatile Consumer<ProductDelta> changeListener;
+    // Токен сессии, выданный сервером при входе: передается в командах и при переподключении
+    private volatile String sessionToken;
+    // Вызывается в потоке Swing после переподключения с продолжением сессии
+    private volatile Runnable resumeListener;
+    // Вызывается в потоке Swing, если после переподключения сервер не продолжил сессию:
+    // соединение есть, но нужен повторный вход
+    private volatile Runnable sessionExpiredListener;
+    // Поток чтения текущего соединения
+    private volatile Thread reader;
 
     private GuiClient() {
         executorService = Executors.newCachedThreadPool();
@@ -45,10 +77,13 @@ public class GuiClient {
 
         try {
             socket = new Socket(host, port);
-            outputStream = new ObjectOutputStream(socket.getOutputStream());
-            inputStream = new ObjectInputStream(socket.getInputStream());
+            socket.setTcpNoDelay(true);
+            outputStream = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            inputStream = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            codec = MessageCodec.forVersion(
+                    Handshake.negotiateAsClient(inputStream, outputStream, Handshake.preferredVersion()));
             connected = true;
-            // startResponseListener();
+            startResponseListener();
 
             return true;
         } catch (IOException e) {
@@ -66,93 +101,203 @@ public class GuiClient {
         } catch (IOException e) {
             System.err.println("Error disconnecting: " + e.getMessage());
         }
+        failPendingRequests(new IOException("Disconnected"));
     }
 
     public boolean isConnected() {
         return connected;
     }
 
-    public void sendAuthRequest(String username, String password, boolean isRegistration,
-                                Consumer<Response> callback) {
-        executorService.execute(() -> {
-            try {
-                AuthRequest request = new AuthRequest(username, password);
-                request.setIsRegistration(isRegistration);
+    public void setResumeListener(Runnable resumeListener) {
+        this.resumeListener = resumeListener;
+    }
 
-                // Синхронизация для предотвращения конфликтов
-                synchronized (outputStream) {
-                    outputStream.writeObject(request);
-                    outputStream.flush();
+    public void setSessionExpiredListener(Runnable sessionExpiredListener) {
+        this.sessionExpiredListener = sessionExpiredListener;
+    }
 
-                    // Чтение ответа сразу после отправки
-                    Response response = (Response) inputStream.readObject();
-                    SwingUtilities.invokeLater(() -> callback.accept(response));
+    // Новое соединение с тем же сервером и продолжение сессии по токену вместо повторного входа.
+    // true, если соединение восстановлено; если сервер не принял токен, вызывается
+    // sessionExpiredListener. Вызывается не из потока Swing: ждет ответа сервера
+    public boolean reconnect() {
+        String token = sessionToken;
+        if (token == null) {
+            return false;
+        }
+        connected = false;
+        try {
+            if (socket != null) socket.close();
+        } catch (IOException e) {
+            // старое соединение уже оборвано
+        }
+        // Старый поток чтения должен завершиться до нового соединения, иначе он примет
+        // закрытие своего сокета за обрыв нового
+        Thread oldReader = reader;
+        if (oldReader != null && oldReader != Thread.currentThread()) {
+            try {
+                oldReader.join(TimeUnit.SECONDS.toMillis(RESUME_TIMEOUT_SEC));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        if (!connect(host, port)) {
+            return false;
+        }
+        try {
+            Response response = send(new ResumeRequest(token)).get(RESUME_TIMEOUT_SEC, TimeUnit.SECONDS);
+            if (response.isSuccess()) {
+                Runnable listener = resumeListener;
+                if (listener != null) {
+                    SwingUtilities.invokeLater(listener);
                 }
-            } catch (Exception e) {
-                SwingUtilities.invokeLater(() -> {
-                    callback.accept(new Response(false, "Authentication error: " + e.getMessage()));
-                });
+                return true;
+            }
+            System.err.println("Session resume rejected: " + response.getMessage());
+            sessionToken = null;
+            Runnable listener = sessionExpiredListener;
+            if (listener != null) {
+                SwingUtilities.invokeLater(listener);
             }
-        });
+            return true;
+        } catch (Exception e) {
+            System.err.println("Session resume failed: " + e.getMessage());
+        }
+        return false;
     }
 
-    public void sendCommandRequest(String command, String[] args, User user,
-                                   Consumer<Response> callback) {
-        executorService.execute(() -> {
-            try {
-                CommandRequest request = new CommandRequest(
-                        command, args, user.getUsername(), user.getPasswordHash());
+    // Отправляет запрос, не дожидаясь ответов на предыдущие: ответ придет в возвращаемый future.
+    // Блокировка удерживается только на время записи кадра, поэтому запросы идут конвейером.
+    public CompletableFuture<Response> send(Request request) {
+        long correlationId = nextCorrelationId.incrementAndGet();
+        request.setCorrelationId(correlationId);
+        CompletableFuture<Response> future = new CompletableFuture<>();
+        pendingRequests.put(correlationId, future);
 
-                // Синхронизация для предотвращения конфликтов
-                synchronized (outputStream) {
-                    outputStream.writeObject(request);
-                    outputStream.flush();
+        try {
+            synchronized (writeLock) {
+                FrameCodec.writeFrame(outputStream, codec, request);
+            }
+        } catch (IOException e) {
+            pendingRequests.remove(correlationId);
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    public void sendAuthRequest(String username, String password, boolean isRegistration,
+                                Consumer<Response> callback) {
+        AuthRequest request = new AuthRequest(username, password);
+        request.setIsRegistration(isRegistration);
 
-                    // Чтение ответа сразу после отправки
-                    Response response = (Response) inputStream.readObject();
-                    SwingUtilities.invokeLater(() -> callback.accept(response));
+        send(request).whenComplete((response, error) -> SwingUtilities.invokeLater(() -> {
+            if (error != null) {
+                callback.accept(new Response(false, "Authentication error: " + error.getMessage()));
+            } else {
+                if (response.isSuccess() && response.getData() instanceof SessionTicket) {
+                    sessionToken = ((SessionTicket) response.getData()).getToken();
                 }
-            } catch (Exception e) {
-                SwingUtilities.invokeLater(() -> {
-                    callback.accept(new Response(false, "Command error: " + e.getMessage()));
-                });
+                callback.accept(response);
             }
-        });
+        }));
     }
 
-    public void requestProducts(Consumer<List<Product>> callback, Consumer<String> errorCallback) {
-        executorService.execute(() -> {
-            try {
-                outputStream.writeObject("GET_PRODUCTS");
-                outputStream.flush();
+    public void sendCommandRequest(String command, String[] args, Consumer<Response> callback) {
+        CommandRequest request = new CommandRequest(command, args, sessionToken);
 
+        send(request).whenComplete((response, error) -> SwingUtilities.invokeLater(() -> {
+            if (error != null) {
+                callback.accept(new Response(false, "Command error: " + error.getMessage()));
+            } else {
+                callback.accept(response);
+            }
+        }));
+    }
+
+    public void requestProducts(Consumer<List<Product>> callback, Consumer<String> errorCallback) {
+        send(new ProductsRequest()).whenComplete((response, error) -> SwingUtilities.invokeLater(() -> {
+            if (error != null) {
+                errorCallback.accept("Failed to get products: " + error.getMessage());
+            } else if (!response.isSuccess()) {
+                errorCallback.accept("Failed to get products: " + response.getMessage());
+            } else {
                 @SuppressWarnings("unchecked")
-                List<Product> products = (List<Product>) inputStream.readObject();
-                SwingUtilities.invokeLater(() -> callback.accept(products));
-            } catch (Exception e) {
-                SwingUtilities.invokeLater(() -> {
-                    errorCallback.accept("Failed to get products: " + e.getMessage());
-                });
+                List<Product> products = (List<Product>) response.getData();
+                callback.accept(products);
+            }
+        }));
+    }
+
+    // Изменения коллекции после известной версии (или полный снимок, если сервер не может их выдать)
+    public void requestChanges(long epoch, long sinceVersion, Consumer<ProductDelta> callback,
+                               Consumer<String> errorCallback) {
+        send(new ChangesRequest(epoch, sinceVersion)).whenComplete((response, error) -> SwingUtilities.invokeLater(() -> {
+            if (error != null) {
+                errorCallback.accept("Failed to get changes: " + error.getMessage());
+            } else if (!response.isSuccess()) {
+                errorCallback.accept("Failed to get changes: " + response.getMessage());
+            } else {
+                callback.accept((ProductDelta) response.getData());
             }
-        });
+        }));
     }
 
+    // Подписка на изменения коллекции: первый ответ и все последующие рассылки сервера
+    // передаются в listener в потоке Swing
+    public void subscribeToChanges(long epoch, long sinceVersion, Consumer<ProductDelta> listener,
+                                   Consumer<String> errorCallback) {
+        changeListener = listener;
+        send(new SubscribeRequest(epoch, sinceVersion)).whenComplete((response, error) -> SwingUtilities.invokeLater(() -> {
+            if (error != null) {
+                errorCallback.accept("Failed to subscribe: " + error.getMessage());
+            } else if (!response.isSuccess()) {
+                errorCallback.accept("Failed to subscribe: " + response.getMessage());
+            } else {
+                listener.accept((ProductDelta) response.getData());
+            }
+        }));
+    }
+
+    // Единственный поток чтения: раздает ответы ожидающим запросам по correlationId.
+    // Поток привязан к своему соединению и завершается, когда его сокет сменили
     private void startResponseListener() {
-        executorService.execute(() -> {
-            while (connected) {
+        Socket own = socket;
+        DataInputStream in = inputStream;
+        MessageCodec readCodec = codec;
+        Thread reader = new Thread(() -> {
+            while (connected && own == socket) {
                 try {
-                    Object response = inputStream.readObject();
-                    if (response instanceof Response) {
-                        // Обрабатываем ответы от сервера
-                        Response resp = (Response) response;
-                        if (!resp.isSuccess()) {
+                    Object message = FrameCodec.readFrame(in, readCodec);
+                    if (message instanceof Response) {
+                        Response resp = (Response) message;
+                        CompletableFuture<Response> future = pendingRequests.remove(resp.getCorrelationId());
+                        if (future != null) {
+                            future.complete(resp);
+                        } else if (!resp.isSuccess()) {
                             System.err.println("Server error: " + resp.getMessage());
                         }
+                    } else if (message instanceof ProductDelta) {
+                        Consumer<ProductDelta> listener = changeListener;
+                        if (listener != null) {
+                            ProductDelta delta = (ProductDelta) message;
+                            SwingUtilities.invokeLater(() -> listener.accept(delta));
+                        }
                     }
                 } catch (Exception e) {
+                    if (own != socket) {
+                        // Соединение уже заменено новым, его запросы не трогаем
+                        break;
+                    }
                     if (connected) {
                         System.err.println("Error in response listener: " + e.getMessage());
                         connected = false;
+                        failPendingRequests(e);
+                        // Сначала пробуем продолжить сессию на новом соединении; новый поток
+                        // чтения запускает connect, этот завершается
+                        if (reconnect()) {
+                            System.out.println("Reconnected to " + host + ":" + port);
+                            return;
+                        }
                         SwingUtilities.invokeLater(() -> {
                             JOptionPane.showMessageDialog(null,
                                     "Connection lost: " + e.getMessage(),
@@ -160,25 +305,22 @@ public class GuiClient {
                                     JOptionPane.ERROR_MESSAGE);
                         });
                     }
+                    failPendingRequests(e);
                     break;
                 }
             }
-        });
+        }, "gui-client-reader");
+        reader.setDaemon(true);
+        this.reader = reader;
+        reader.start();
     }
 
-    public void startPeriodicUpdates(int intervalSeconds, Runnable updateTask) {
-        executorService.execute(() -> {
-            while (connected) {
-                try {
-                    Thread.sleep(intervalSeconds * 1000);
-                    if (connected) {
-                        SwingUtilities.invokeLater(updateTask);
-                    }
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    break;
-                }
+    private void failPendingRequests(Exception cause) {
+        for (Long correlationId : pendingRequests.keySet()) {
+            CompletableFuture<Response> future = pendingRequests.remove(correlationId);
+            if (future != null) {
+                future.completeExceptionally(cause);
             }
-        });
+        }
     }
-}
\ No newline at end of file
+}
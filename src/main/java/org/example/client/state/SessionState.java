@@ -2,6 +2,9 @@ package org.example.client.state;
 
 import org.example.data.User;
 import org.example.data.Product;
+import org.example.network.ProductDelta;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
 import javax.swing.event.ChangeEvent;
@@ -15,6 +18,9 @@ public class SessionState {
     private List<Product> products;
     private Map<Integer, String> userColors;
     private List<ChangeListener> changeListeners;
+    // Версия коллекции сервера, до которой применены изменения (-1 - данных еще нет)
+    private long productsEpoch;
+    private long productsVersion = -1;
 
     private SessionState() {
         products = new CopyOnWriteArrayList<>();
@@ -48,6 +54,43 @@ public class SessionState {
         notifyChangeListeners();
     }
 
+    public long getProductsEpoch() {
+        return productsEpoch;
+    }
+
+    public long getProductsVersion() {
+        return productsVersion;
+    }
+
+    // Применяет изменения с сервера одной операцией и одним уведомлением слушателей
+    public void applyDelta(ProductDelta delta) {
+        // Устаревшие изменения (ответ на опрос, обогнанный рассылкой) пропускаем
+        if (!delta.isFull() && delta.getEpoch() == productsEpoch && delta.getVersion() <= productsVersion) {
+            return;
+        }
+        productsEpoch = delta.getEpoch();
+        productsVersion = delta.getVersion();
+        if (delta.isFull()) {
+            setProducts(delta.getUpserts());
+            return;
+        }
+        if (delta.isEmpty()) {
+            return;
+        }
+
+        LinkedHashMap<Long, Product> byId = new LinkedHashMap<>();
+        for (Product product : products) {
+            byId.put(product.getId(), product);
+        }
+        for (Long id : delta.getRemovedIds()) {
+            byId.remove(id);
+        }
+        for (Product product : delta.getUpserts()) {
+            byId.put(product.getId(), product);
+        }
+        setProducts(new ArrayList<>(byId.values()));
+    }
+
     public void addProduct(Product product) {
         this.products.add(product);
         notifyChangeListeners();
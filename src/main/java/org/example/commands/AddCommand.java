@@ -9,8 +9,10 @@ import org.example.management.CollectionManager;
 import org.example.management.DatabaseManager;
 
 import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 
-public class AddCommand implements Command {
+public class AddCommand implements AsyncCommand {
     private final CollectionManager collectionManager;
     private final DatabaseManager databaseManager;
 
@@ -20,13 +22,13 @@ public class AddCommand implements Command {
     }
 
     @Override
-    public String execute(String[] args, User user) {
+    public CompletionStage<String> executeAsync(String[] args, User user) {
         if (user == null) {
-            return "Ошибка: требуется авторизация";
+            return CompletableFuture.completedFuture("Ошибка: требуется авторизация");
         }
 
         if (args.length < 10) {
-            return "Недостаточно аргументов. Требуется: name, x, y, price, partNumber, manufactureCost, unitOfMeasure, orgName, orgFullName, employeesCount";
+            return CompletableFuture.completedFuture("Недостаточно аргументов. Требуется: name, x, y, price, partNumber, manufactureCost, unitOfMeasure, orgName, orgFullName, employeesCount");
         }
 
         try {
@@ -43,30 +45,32 @@ public class AddCommand implements Command {
 
             // Валидация данных
             if (x <= -349) {
-                return "Ошибка: координата X должна быть больше -349";
+                return CompletableFuture.completedFuture("Ошибка: координата X должна быть больше -349");
             }
             if (price != null && price <= 0) {
-                return "Ошибка: цена должна быть больше 0";
+                return CompletableFuture.completedFuture("Ошибка: цена должна быть больше 0");
             }
             if (employeesCount <= 0) {
-                return "Ошибка: количество сотрудников должно быть больше 0";
+                return CompletableFuture.completedFuture("Ошибка: количество сотрудников должно быть больше 0");
             }
 
             Organization manufacturer = new Organization(orgName, orgFullName, employeesCount, user.getId());
             Product product = new Product(name, new Coordinates(x, y), price, partNumber, manufactureCost, unitOfMeasure, manufacturer, user.getId());
 
-            boolean success = collectionManager.addProduct(product, user);
-            if (success) {
-                return "Продукт успешно добавлен с ID: " + product.getId();
-            } else {
-                return "Ошибка: не удалось добавить продукт в базу данных";
-            }
+            // Поток команды свободен, пока продукт записывается в БД
+            return collectionManager.addProductAsync(product, user).handle((success, error) -> {
+                if (error != null) {
+                    return "Ошибка при создании продукта: " + AsyncCommand.unwrap(error).getMessage();
+                }
+                return success ? "Продукт успешно добавлен с ID: " + product.getId()
+                        : "Ошибка: не удалось добавить продукт в базу данных";
+            });
         } catch (NumberFormatException e) {
-            return "Ошибка: неверный формат числа";
+            return CompletableFuture.completedFuture("Ошибка: неверный формат числа");
         } catch (IllegalArgumentException e) {
-            return "Ошибка: неверное значение для unitOfMeasure. Допустимые значения: " + Arrays.toString(UnitOfMeasure.values());
+            return CompletableFuture.completedFuture("Ошибка: неверное значение для unitOfMeasure. Допустимые значения: " + Arrays.toString(UnitOfMeasure.values()));
         } catch (Exception e) {
-            return "Ошибка при создании продукта: " + e.getMessage();
+            return CompletableFuture.completedFuture("Ошибка при создании продукта: " + e.getMessage());
         }
     }
 
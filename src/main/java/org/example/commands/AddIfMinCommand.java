@@ -98,15 +98,12 @@ public class AddIfMinCommand implements Command {
             // Сравниваем с минимальным элементом
             Product minProduct = collectionManager.getMin();
             if (minProduct == null || newProduct.compareTo(minProduct) < 0) {
-                boolean success = collectionManager.addProduct(newProduct, user);
-                if (success) {
+                // Минимум повторно проверяется при применении к коллекции
+                if (collectionManager.addProductIfMin(newProduct, user)) {
                     return "Продукт добавлен. ID: " + newProduct.getId();
-                } else {
-                    return "Ошибка: не удалось добавить продукт в базу данных";
                 }
-            } else {
-                return "Продукт НЕ добавлен: его значение не меньше минимального в коллекции.";
             }
+            return "Продукт НЕ добавлен: его значение не меньше минимального в коллекции.";
         } catch (NumberFormatException e) {
             return "Ошибка: неверный формат числа";
         } catch (Exception e) {
@@ -0,0 +1,33 @@
+package org.example.commands;
+
+import org.example.data.User;
+
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+
+// Команда, которая не занимает поток на время ожидания БД: результат приходит в CompletionStage.
+// Синхронный execute (например, при выполнении скрипта) дожидается результата
+public interface AsyncCommand extends Command {
+    CompletionStage<String> executeAsync(String[] args, User user);
+
+    @Override
+    default String execute(String[] args, User user) throws Exception {
+        try {
+            return executeAsync(args, user).toCompletableFuture().join();
+        } catch (CompletionException e) {
+            Throwable cause = unwrap(e);
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        }
+    }
+
+    // Исходная ошибка без оберток CompletionException
+    static Throwable unwrap(Throwable error) {
+        while (error instanceof CompletionException && error.getCause() != null) {
+            error = error.getCause();
+        }
+        return error;
+    }
+}
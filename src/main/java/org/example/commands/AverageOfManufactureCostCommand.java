@@ -20,4 +20,9 @@ public class AverageOfManufactureCostCommand implements Command {
     public String getDescription() {
         return "Вывести среднее значение manufactureCost";
     }
+
+    @Override
+    public boolean isReadOnly() {
+        return true;
+    }
 }
\ No newline at end of file
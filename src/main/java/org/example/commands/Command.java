@@ -5,4 +5,9 @@ import org.example.data.User;
 public interface Command {
     String execute(String[] args, User user) throws Exception;
     String getDescription();
+
+    // Команда только читает коллекцию и может выполняться параллельно с другими
+    default boolean isReadOnly() {
+        return false;
+    }
 }
\ No newline at end of file
@@ -63,4 +63,9 @@ public class FilterByManufactureCostCommand implements Command {
     public String getDescription() {
         return "вывести элементы с указанной manufactureCost (полная информация)";
     }
+
+    @Override
+    public boolean isReadOnly() {
+        return true;
+    }
 }
\ No newline at end of file
@@ -67,4 +67,9 @@ public class FilterByPriceCommand implements Command {
     public String getDescription() {
         return "вывести элементы, значение поля price которых равно заданному";
     }
+
+    @Override
+    public boolean isReadOnly() {
+        return true;
+    }
 }
\ No newline at end of file
@@ -49,4 +49,9 @@ public class HeadCommand implements Command {
     public String getDescription() {
         return "вывести первый элемент коллекции (без удаления)";
     }
+
+    @Override
+    public boolean isReadOnly() {
+        return true;
+    }
 }
\ No newline at end of file
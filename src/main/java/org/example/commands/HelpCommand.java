@@ -27,4 +27,9 @@ public class HelpCommand implements Command {
     public String getDescription() {
         return "Вывести справку по доступным командам";
     }
+
+    @Override
+    public boolean isReadOnly() {
+        return true;
+    }
 }
\ No newline at end of file
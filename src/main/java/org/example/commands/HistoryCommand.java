@@ -1,31 +1,38 @@
 package org.example.commands;
 
 import org.example.data.User;
-import java.util.LinkedList;
-import java.util.Queue;
+import org.example.management.CommandHistory;
+import org.example.management.CommandManager;
+
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
 
 public class HistoryCommand implements Command {
-    private static final int MAX_HISTORY_SIZE = 15;
-    private static final Queue<String> commandHistory = new LinkedList<>();
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm:ss");
+    private final CommandManager commandManager;
 
-    public static void addToHistory(String commandName) {
-        if (commandHistory.size() >= MAX_HISTORY_SIZE) {
-            commandHistory.poll();
-        }
-        commandHistory.add(commandName);
+    public HistoryCommand(CommandManager commandManager) {
+        this.commandManager = commandManager;
     }
 
+    // Каждый пользователь видит только свои команды
     @Override
     public String execute(String[] args, User user) {
-        if (commandHistory.isEmpty()) {
+        List<CommandHistory.Entry> entries = commandManager.getHistory().get(user != null ? user.getId() : -1);
+        if (entries.isEmpty()) {
             return "История команд пуста";
         }
 
         StringBuilder sb = new StringBuilder();
-        sb.append("Последние ").append(commandHistory.size()).append(" команд:\n");
+        sb.append("Последние ").append(entries.size()).append(" команд:\n");
         int i = 1;
-        for (String command : commandHistory) {
-            sb.append(i++).append(". ").append(command).append("\n");
+        for (CommandHistory.Entry entry : entries) {
+            LocalTime time = LocalTime.ofInstant(entry.getTimestamp(), ZoneId.systemDefault());
+            sb.append(i++).append(". ").append(entry.getCommand())
+                    .append(String.format(" (%s, %.1f мс)", TIME_FORMAT.format(time), entry.getLatencyMillis()))
+                    .append("\n");
         }
         return sb.toString();
     }
@@ -34,4 +41,9 @@ public class HistoryCommand implements Command {
     public String getDescription() {
         return "вывести последние 15 команд (без их аргументов)";
     }
+
+    @Override
+    public boolean isReadOnly() {
+        return true;
+    }
 }
\ No newline at end of file
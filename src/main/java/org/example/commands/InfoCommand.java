@@ -21,4 +21,9 @@ public class InfoCommand implements Command {
     public String getDescription() {
         return "Вывести информацию о коллекции";
     }
+
+    @Override
+    public boolean isReadOnly() {
+        return true;
+    }
 }
\ No newline at end of file
@@ -54,4 +54,9 @@ public class PrintAscendingCommand implements Command {
     public String getDescription() {
         return "вывести элементы коллекции в порядке возрастания";
     }
+
+    @Override
+    public boolean isReadOnly() {
+        return true;
+    }
 }
\ No newline at end of file
@@ -36,4 +36,9 @@ public class PrintFieldAscendingPriceCommand implements Command {
     public String getDescription() {
         return "вывести значения поля price всех элементов в порядке возрастания";
     }
+
+    @Override
+    public boolean isReadOnly() {
+        return true;
+    }
 }
\ No newline at end of file
@@ -5,7 +5,10 @@ import org.example.data.User;
 import org.example.management.CollectionManager;
 import org.example.management.DatabaseManager;
 
-public class RemoveByIdCommand implements Command {
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+public class RemoveByIdCommand implements AsyncCommand {
     private final CollectionManager collectionManager;
     private final DatabaseManager databaseManager;
 
@@ -15,14 +18,14 @@ public class RemoveByIdCommand implements Command {
     }
 
     @Override
-    public String execute(String[] args, User user) {
+    public CompletionStage<String> executeAsync(String[] args, User user) {
         if (user == null) {
-            return "Ошибка: требуется авторизация";
+            return CompletableFuture.completedFuture("Ошибка: требуется авторизация");
         }
 
         try {
             if (args.length < 1) {
-                return "Требуется аргумент: ID продукта";
+                return CompletableFuture.completedFuture("Требуется аргумент: ID продукта");
             }
 
             long id = Long.parseLong(args[0]); // Изменено на long
@@ -30,23 +33,23 @@ public class RemoveByIdCommand implements Command {
             // Проверяем существование продукта и права доступа
             Product product = collectionManager.getById(id);
             if (product == null) {
-                return "Продукт с ID " + id + " не найден";
+                return CompletableFuture.completedFuture("Продукт с ID " + id + " не найден");
             }
 
             if (product.getCreatorId() != user.getId()) {
-                return "Ошибка: вы можете удалять только свои продукты";
+                return CompletableFuture.completedFuture("Ошибка: вы можете удалять только свои продукты");
             }
 
-            boolean success = collectionManager.removeById(id, user);
-            if (success) {
-                return "Продукт с ID " + id + " удален.";
-            } else {
-                return "Ошибка: не удалось удалить продукт";
-            }
+            return collectionManager.removeByIdAsync(id, user).handle((success, error) -> {
+                if (error != null) {
+                    return "Ошибка: " + AsyncCommand.unwrap(error).getMessage();
+                }
+                return success ? "Продукт с ID " + id + " удален." : "Ошибка: не удалось удалить продукт";
+            });
         } catch (NumberFormatException e) {
-            return "Ошибка: некорректный формат ID";
+            return CompletableFuture.completedFuture("Ошибка: некорректный формат ID");
         } catch (Exception e) {
-            return "Ошибка: " + e.getMessage();
+            return CompletableFuture.completedFuture("Ошибка: " + e.getMessage());
         }
     }
 
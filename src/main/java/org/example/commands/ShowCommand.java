@@ -53,4 +53,9 @@ public class ShowCommand implements Command {
     public String getDescription() {
         return "вывести все элементы коллекции с полной информацией";
     }
+
+    @Override
+    public boolean isReadOnly() {
+        return true;
+    }
 }
\ No newline at end of file
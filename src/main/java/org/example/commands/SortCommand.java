@@ -12,12 +12,18 @@ public class SortCommand implements Command {
 
     @Override
     public String execute(String[] args, User user) {
-        collectionManager.sort();
-        return "Коллекция отсортирована в естественном порядке";
+        // Коллекция хранится упорядоченной индексом по стоимости производства, сортировать нечего
+        return "Коллекция всегда хранится в естественном порядке (по стоимости производства), "
+                + "сортировка не требуется";
     }
 
     @Override
     public String getDescription() {
-        return "отсортировать коллекцию в естественном порядке";
+        return "проверить порядок коллекции (она всегда упорядочена по стоимости производства)";
+    }
+
+    @Override
+    public boolean isReadOnly() {
+        return true;
     }
 }
\ No newline at end of file
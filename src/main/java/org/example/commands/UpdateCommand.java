@@ -9,8 +9,10 @@ import org.example.management.CollectionManager;
 import org.example.management.DatabaseManager;
 
 import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 
-public class UpdateCommand implements Command {
+public class UpdateCommand implements AsyncCommand {
     private final CollectionManager collectionManager;
     private final DatabaseManager databaseManager;
 
@@ -20,13 +22,13 @@ public class UpdateCommand implements Command {
     }
 
     @Override
-    public String execute(String[] args, User user) {
+    public CompletionStage<String> executeAsync(String[] args, User user) {
         if (user == null) {
-            return "Ошибка: требуется авторизация";
+            return CompletableFuture.completedFuture("Ошибка: требуется авторизация");
         }
 
         if (args.length < 11) {
-            return "Недостаточно аргументов. Требуется: id, name, x, y, price, partNumber, manufactureCost, unitOfMeasure, orgName, orgFullName, employeesCount";
+            return CompletableFuture.completedFuture("Недостаточно аргументов. Требуется: id, name, x, y, price, partNumber, manufactureCost, unitOfMeasure, orgName, orgFullName, employeesCount");
         }
 
         try {
@@ -35,21 +37,21 @@ public class UpdateCommand implements Command {
             // Проверяем существование продукта и права доступа
             Product oldProduct = collectionManager.getById(id);
             if (oldProduct == null) {
-                return "Продукт с ID " + id + " не найден";
+                return CompletableFuture.completedFuture("Продукт с ID " + id + " не найден");
             }
 
             if (oldProduct.getCreatorId() != user.getId()) {
-                return "Ошибка: вы можете изменять только свои продукты";
+                return CompletableFuture.completedFuture("Ошибка: вы можете изменять только свои продукты");
             }
 
             String name = args[1];
             if (name.isEmpty()) {
-                return "Ошибка: название не может быть пустым";
+                return CompletableFuture.completedFuture("Ошибка: название не может быть пустым");
             }
 
             long x = Long.parseLong(args[2]);
             if (x <= -349) {
-                return "Ошибка: координата X должна быть больше -349";
+                return CompletableFuture.completedFuture("Ошибка: координата X должна быть больше -349");
             }
 
             float y = Float.parseFloat(args[3]);
@@ -58,13 +60,13 @@ public class UpdateCommand implements Command {
             if (!args[4].isEmpty()) {
                 price = Long.parseLong(args[4]);
                 if (price <= 0) {
-                    return "Ошибка: цена должна быть больше 0";
+                    return CompletableFuture.completedFuture("Ошибка: цена должна быть больше 0");
                 }
             }
 
             String partNumber = args[5];
             if (partNumber.isEmpty()) {
-                return "Ошибка: парт-номер не может быть пустым";
+                return CompletableFuture.completedFuture("Ошибка: парт-номер не может быть пустым");
             }
 
             Float manufactureCost = null;
@@ -76,22 +78,22 @@ public class UpdateCommand implements Command {
             try {
                 unitOfMeasure = UnitOfMeasure.valueOf(args[7].toUpperCase());
             } catch (IllegalArgumentException e) {
-                return "Ошибка: недопустимая единица измерения. Допустимые значения: " + Arrays.toString(UnitOfMeasure.values());
+                return CompletableFuture.completedFuture("Ошибка: недопустимая единица измерения. Допустимые значения: " + Arrays.toString(UnitOfMeasure.values()));
             }
 
             String orgName = args[8];
             if (orgName.isEmpty()) {
-                return "Ошибка: название организации не может быть пустым";
+                return CompletableFuture.completedFuture("Ошибка: название организации не может быть пустым");
             }
 
             String orgFullName = args[9];
             if (orgFullName.isEmpty()) {
-                return "Ошибка: полное название организации не может быть пустым";
+                return CompletableFuture.completedFuture("Ошибка: полное название организации не может быть пустым");
             }
 
             long employeesCount = Long.parseLong(args[10]);
             if (employeesCount <= 0) {
-                return "Ошибка: количество сотрудников должно быть больше 0";
+                return CompletableFuture.completedFuture("Ошибка: количество сотрудников должно быть больше 0");
             }
 
             // Создаем обновленный продукт
@@ -108,16 +110,16 @@ public class UpdateCommand implements Command {
             );
 
             // Обновляем продукт
-            boolean success = collectionManager.updateProduct(id, updatedProduct, user);
-            if (success) {
-                return "Продукт с ID " + id + " успешно обновлен";
-            } else {
-                return "Ошибка: не удалось обновить продукт";
-            }
+            return collectionManager.updateProductAsync(id, updatedProduct, user).handle((success, error) -> {
+                if (error != null) {
+                    return "Ошибка при обновлении продукта: " + AsyncCommand.unwrap(error).getMessage();
+                }
+                return success ? "Продукт с ID " + id + " успешно обновлен" : "Ошибка: не удалось обновить продукт";
+            });
         } catch (NumberFormatException e) {
-            return "Ошибка: неверный формат числа";
+            return CompletableFuture.completedFuture("Ошибка: неверный формат числа");
         } catch (Exception e) {
-            return "Ошибка при обновлении продукта: " + e.getMessage();
+            return CompletableFuture.completedFuture("Ошибка при обновлении продукта: " + e.getMessage());
         }
     }
 
@@ -0,0 +1,75 @@
+package org.example.management;
+
+import org.example.data.Product;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Ограниченный журнал изменений коллекции: каждой вставке, замене или удалению
+// соответствует запись с номером версии. Старые записи вытесняются.
+public class ChangeLog {
+    private final int capacity;
+    private final ArrayDeque<Entry> entries = new ArrayDeque<>();
+    // Изменения с версией не больше этой уже недоступны
+    private long truncatedThrough;
+
+    public ChangeLog(int capacity) {
+        this.capacity = Math.max(1, capacity);
+    }
+
+    // product == null означает удаление
+    public void append(long version, long productId, Product product) {
+        if (entries.size() >= capacity) {
+            truncatedThrough = Math.max(truncatedThrough, entries.pollFirst().version);
+        }
+        entries.addLast(new Entry(version, productId, product));
+    }
+
+    // Сброс журнала: для всех версий до currentVersion включительно нужен полный снимок
+    public void reset(long currentVersion) {
+        entries.clear();
+        truncatedThrough = currentVersion;
+    }
+
+    // Изменения после версии sinceVersion, схлопнутые по id (последнее значение побеждает).
+    // null, если нужные записи уже вытеснены и клиенту нужен полный снимок.
+    public Map<Long, Product> since(long sinceVersion, long currentVersion) {
+        Map<Long, Product> changes = new LinkedHashMap<>();
+        if (sinceVersion >= currentVersion) {
+            return changes;
+        }
+        if (sinceVersion < truncatedThrough) {
+            return null;
+        }
+        Iterator<Entry> it = entries.descendingIterator();
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            if (entry.version <= sinceVersion) {
+                break;
+            }
+            // putIfAbsent не подходит: удаление хранится как null и было бы перезаписано
+            if (!changes.containsKey(entry.productId)) {
+                changes.put(entry.productId, entry.product);
+            }
+        }
+        return changes;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private static class Entry {
+        private final long version;
+        private final long productId;
+        private final Product product;
+
+        private Entry(long version, long productId, Product product) {
+            this.version = version;
+            this.productId = productId;
+            this.product = product;
+        }
+    }
+}
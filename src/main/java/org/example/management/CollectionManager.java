@@ -2,97 +2,722 @@ package org.example.management;
 
 import org.example.data.Product;
 import org.example.data.User;
+import org.example.network.ProductDelta;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongConsumer;
 import java.util.stream.Collectors;
 
+// Писатели сначала выполняют запрос к БД без блокировок, затем коротко берут writeLock
+// и применяют изменение к индексам за O(log n). Поиск по id и голова коллекции читаются
+// без блокировок. Упорядоченный список для чтения всей коллекции строится лениво: один раз
+// на версию, при первом чтении после изменения, а не при каждой записи.
+// При отложенной записи изменение применяется к коллекции и рассылается сразу после
+// добавления в журнал, а автор получает ответ после fsync. Гарантия слабее, чем
+// у синхронного режима: при сбое сервера до fsync другие клиенты могли уже увидеть
+// изменение, которого после перезапуска не будет.
 public class CollectionManager {
-    private final LinkedList<Product> collection = new LinkedList<>();
-    private ZonedDateTime initTime;
+    // Продукты с индексами по id и по стоимости производства (изменяются только под writeLock)
+    private volatile ProductStore store = new ProductStore();
+    private static final int MAX_CONFLICT_RETRIES = 3;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private volatile Snapshot snapshot = new Snapshot(0, new ArrayList<>());
+    // Первый продукт коллекции, обновляется при каждом изменении
+    private volatile Product head;
+    private volatile ZonedDateTime initTime;
     private final DatabaseManager databaseManager;
+    // Версия коллекции растет с каждым изменением; epoch отличает перезапуски сервера.
+    // Меняется под writeLock и монитором changeLog
+    private final long epoch = System.currentTimeMillis();
+    private volatile long version;
+    private final ChangeLog changeLog = new ChangeLog(Integer.getInteger("collection.changeLogSize", 10_000));
+    // Слушатели получают новую версию после изменений в отдельном потоке (должны работать быстро).
+    // Изменения, случившиеся до запуска рассылки, объединяются в одно уведомление
+    private final List<LongConsumer> changeListeners = new CopyOnWriteArrayList<>();
+    private final AtomicBoolean notifyScheduled = new AtomicBoolean(false);
+    private final ExecutorService notifier = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "collection-notify");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Локальный снимок для быстрого перезапуска; запас времени покрывает транзакции,
+    // которые начались до снимка, а зафиксировались после него
+    private final Path snapshotFile = Paths.get(System.getProperty("collection.snapshotFile", "collection.snapshot"));
+    private static final Duration SNAPSHOT_MARGIN =
+            Duration.ofSeconds(Integer.getInteger("collection.snapshotMarginSec", 300));
+    // Время БД, к которому коллекция в памяти была полностью согласована с таблицей
+    private volatile Instant syncedAt;
+    // Отложенная запись в БД; null - каждое изменение сразу пишется в БД
+    private final WriteBehindQueue writeBehind;
+    // Потоки, в которых асинхронные команды ждут БД. Их не больше, чем соединений в пуле:
+    // остальные запросы ждут в очереди, не занимая потоков
+    private final ExecutorService databaseExecutor = newDatabaseExecutor();
+
+    // Неизменяемый упорядоченный список продуктов на момент версии
+    private static final class Snapshot {
+        final long version;
+        final List<Product> products;
+
+        Snapshot(long version, List<Product> products) {
+            this.version = version;
+            this.products = Collections.unmodifiableList(products);
+        }
+    }
 
     public CollectionManager(DatabaseManager databaseManager) {
         this.databaseManager = databaseManager;
+        this.writeBehind = createWriteBehind(databaseManager);
     }
 
-    public synchronized void loadFromDatabase() throws Exception {
-        collection.clear();
-        List<Product> products = databaseManager.loadProducts();
-        collection.addAll(products);
+    private static ExecutorService newDatabaseExecutor() {
+        AtomicInteger counter = new AtomicInteger();
+        return Executors.newFixedThreadPool(Integer.getInteger("db.ioThreads", DatabaseConnection.getMaximumPoolSize()),
+                task -> {
+                    Thread thread = new Thread(task, "db-io-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
 
-        if (!collection.isEmpty()) {
-            initTime = ZonedDateTime.now();
-            collection.sort(Product::compareTo);
+    private WriteBehindQueue createWriteBehind(DatabaseManager databaseManager) {
+        if (!WriteBehindQueue.isEnabled()) {
+            return null;
+        }
+        try {
+            return new WriteBehindQueue(databaseManager, epoch, this::resolveRejected);
+        } catch (IOException e) {
+            System.err.println("Не удалось открыть журнал, отложенная запись отключена: " + e.getMessage());
+            return null;
         }
     }
 
-    public synchronized boolean addProduct(Product product, User user) throws Exception {
-        Long id = databaseManager.addProduct(product, user.getId());
-        if (id != null && id > 0) {
-            product.setId(id);
-            product.setCreatorId(user.getId());
-            product.setCreationDate(ZonedDateTime.now());
+    public void loadFromDatabase() throws Exception {
+        // Время берется до чтения: все, что изменится во время загрузки, попадет в следующую дочитку
+        Instant databaseTime = databaseManager.getDatabaseTime();
+        ProductStore loaded = loadFromSnapshot();
+        if (loaded == null) {
+            // Индексы строятся по мере чтения строк, промежуточный список не нужен
+            loaded = new ProductStore();
+            databaseManager.loadProducts(loaded::put);
+        }
+        syncedAt = databaseTime;
+        if (writeBehind != null) {
+            // Поверх снимка и БД - изменения из журнала, которые БД еще не подтвердила
+            writeBehind.recover(loaded);
+        }
+        writeLock.lock();
+        try {
+            store = loaded;
 
-            if (collection.isEmpty()) {
-                this.initTime = product.getCreationDate();
+            if (!store.isEmpty()) {
+                initTime = ZonedDateTime.now();
             }
+            synchronized (changeLog) {
+                version++;
+                changeLog.reset(version);
+                publishHead();
+            }
+            notifyChangeListeners();
+        } finally {
+            writeLock.unlock();
+        }
+    }
 
-            boolean added = collection.add(product);
-            if (added) {
-                // Поддерживаем сортировку после добавления
-                collection.sort(Product::compareTo);
+    // Снимок с диска плюс строки, измененные в БД после него; null, если снимка нет или он непригоден
+    private ProductStore loadFromSnapshot() throws Exception {
+        if (!databaseManager.isChangeTrackingAvailable()) {
+            return null;
+        }
+        SnapshotFile file;
+        try {
+            file = SnapshotFile.read(snapshotFile);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Снимок коллекции " + snapshotFile + " поврежден, полная загрузка: " + e.getMessage());
+            return null;
+        }
+        if (file == null) {
+            return null;
+        }
+
+        long start = System.nanoTime();
+        ProductStore loaded = new ProductStore();
+        for (Product product : file.getProducts()) {
+            loaded.put(product);
+        }
+        int[] changed = new int[1];
+        databaseManager.loadProductsChangedSince(file.getSyncedAt().minus(SNAPSHOT_MARGIN), file.getMaxId(),
+                product -> {
+                    loaded.put(product);
+                    changed[0]++;
+                });
+
+        // Удаленные после снимка продукты находятся по списку id из БД
+        long[] ids = databaseManager.loadProductIds();
+        List<Long> removed = new ArrayList<>();
+        for (Product product : loaded.values()) {
+            if (Arrays.binarySearch(ids, product.getId()) < 0) {
+                removed.add(product.getId());
             }
-            return added;
         }
-        return false;
+        for (Long id : removed) {
+            loaded.remove(id);
+        }
+        System.out.printf("Коллекция загружена из снимка %s: %d продуктов, изменено %d, удалено %d за %d мс%n",
+                snapshotFile, file.getProducts().size(), changed[0], removed.size(),
+                (System.nanoTime() - start) / 1_000_000);
+        return loaded;
     }
 
-    public synchronized boolean removeById(Long id, User user) throws Exception {
+    // Записывает текущий снимок коллекции на диск; блокировки не нужны, снимок неизменяемый.
+    // Снимок помечается временем последней сверки с БД (загрузки или переподключения слежения
+    // за другими серверами): при перезапуске дочитывается все, что изменилось с тех пор
+    public void saveSnapshot() throws IOException {
+        Instant time = syncedAt;
+        if (time == null || !databaseManager.isChangeTrackingAvailable()) {
+            return;
+        }
+        Snapshot current = snapshot();
+        SnapshotFile.write(snapshotFile, current.version, time, current.products);
+    }
+
+    // Полная сверка с БД после (пере)подключения слежения за другими серверами:
+    // строки, измененные с последней сверки, и продукты, которых в БД больше нет.
+    // Строки и id берутся из одного снимка БД. Продукты, измененные в памяти после начала
+    // сверки или еще не записанные в БД к ее началу, не трогаются: в памяти они новее снимка
+    public void resyncWithDatabase() throws Exception {
+        long startVersion;
+        Set<Long> unflushed;
+        writeLock.lock();
+        try {
+            startVersion = version;
+            unflushed = writeBehind != null ? writeBehind.getPendingIds() : new HashSet<>();
+        } finally {
+            writeLock.unlock();
+        }
+
+        Map<Long, Product> changes = new HashMap<>();
+        Instant since = syncedAt != null && databaseManager.isChangeTrackingAvailable()
+                ? syncedAt.minus(SNAPSHOT_MARGIN) : null;
+        DatabaseManager.SyncPoint point = databaseManager.loadSyncPoint(since,
+                product -> changes.put(product.getId(), product));
+
+        writeLock.lock();
+        try {
+            Map<Long, Product> newer;
+            synchronized (changeLog) {
+                newer = changeLog.since(startVersion, version);
+            }
+            if (newer == null) {
+                // Пока читалась БД, изменений стало больше, чем помнит журнал: повторим сверку
+                throw new IllegalStateException("коллекция изменилась во время сверки с БД");
+            }
+            unflushed.addAll(newer.keySet());
+            for (Product product : store.values()) {
+                if (!point.contains(product.getId())) {
+                    changes.put(product.getId(), null);
+                }
+            }
+            applyRemoteChanges(changes, unflushed);
+        } finally {
+            writeLock.unlock();
+        }
+        syncedAt = point.getTime();
+    }
+
+    // Изменения, сделанные в БД другими серверами: id -> актуальная строка или null, если
+    // продукт удален. Продукты с еще не записанными в БД локальными изменениями пропускаются,
+    // их строка в БД будет перезаписана
+    public void applyRemoteChanges(Map<Long, Product> changes) {
+        applyRemoteChanges(changes, Collections.emptySet());
+    }
+
+    // skipped - продукты, значение которых в памяти новее полученных изменений
+    private void applyRemoteChanges(Map<Long, Product> changes, Set<Long> skipped) {
+        writeLock.lock();
+        try {
+            Map<Long, Product> applied = new LinkedHashMap<>();
+            for (Map.Entry<Long, Product> change : changes.entrySet()) {
+                Long id = change.getKey();
+                if (skipped.contains(id) || writeBehind != null && writeBehind.isPending(id)) {
+                    continue;
+                }
+                if (change.getValue() == null) {
+                    if (store.remove(id) != null) {
+                        applied.put(id, null);
+                    }
+                } else {
+                    store.put(change.getValue());
+                    applied.put(id, change.getValue());
+                }
+            }
+            if (applied.isEmpty()) {
+                return;
+            }
+            synchronized (changeLog) {
+                version++;
+                for (Map.Entry<Long, Product> change : applied.entrySet()) {
+                    changeLog.append(version, change.getKey(), change.getValue());
+                }
+                publishHead();
+            }
+            notifyChangeListeners();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public boolean addProduct(Product product, User user) throws Exception {
+        if (writeBehind != null) {
+            return addDeferred(product, user, false);
+        }
+        if (!insertProduct(product, user)) {
+            return false;
+        }
+        writeLock.lock();
+        try {
+            applyAdd(product);
+        } finally {
+            writeLock.unlock();
+        }
+        return true;
+    }
+
+    public CompletableFuture<Boolean> addProductAsync(Product product, User user) {
+        return supplyAsync(() -> addProduct(product, user));
+    }
+
+    public CompletableFuture<Boolean> updateProductAsync(Long id, Product newProduct, User user) {
+        return supplyAsync(() -> updateProduct(id, newProduct, user));
+    }
+
+    public CompletableFuture<Boolean> removeByIdAsync(Long id, User user) {
+        return supplyAsync(() -> removeById(id, user));
+    }
+
+    private <T> CompletableFuture<T> supplyAsync(Callable<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            databaseExecutor.execute(() -> {
+                try {
+                    future.complete(task.call());
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    // Добавляет продукт, только если он все еще меньше минимального на момент применения;
+    // false, если нет. Если за время записи в БД минимум изменился, запись в БД откатывается.
+    public boolean addProductIfMin(Product product, User user) throws Exception {
+        if (writeBehind != null) {
+            return addDeferred(product, user, true);
+        }
+        if (!insertProduct(product, user)) {
+            return false;
+        }
+        boolean applied;
+        writeLock.lock();
+        try {
+            Product min = store.first();
+            applied = min == null || product.compareTo(min) < 0;
+            if (applied) {
+                applyAdd(product);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        if (!applied) {
+            databaseManager.removeProduct(product.getId());
+        }
+        return applied;
+    }
+
+    // Отложенная запись: id выдается заранее, порядок изменений задает writeLock,
+    // а подтверждение ждет только записи в журнал на диске. В журнал пишется версия,
+    // которую получит изменение: все писатели держат writeLock, так что это version + 1
+    private boolean addDeferred(Product product, User user, boolean onlyIfMin) throws Exception {
+        writeBehind.reserve(1);
+        boolean queued = false;
+        try {
+            product.setId(writeBehind.nextProductId());
+            product.setCreatorId(user.getId());
+            product.setCreationDate(ZonedDateTime.now());
+            if (product.getManufacturer() != null) {
+                product.getManufacturer().setId(writeBehind.nextOrganizationId());
+                product.getManufacturer().setCreatorId(user.getId());
+            }
+            long position;
+            writeLock.lock();
+            try {
+                Product min = store.first();
+                if (onlyIfMin && min != null && product.compareTo(min) >= 0) {
+                    return false;
+                }
+                position = writeBehind.upsert(version + 1, product, null);
+                queued = true;
+                applyAdd(product);
+            } finally {
+                writeLock.unlock();
+            }
+            writeBehind.sync(position);
+            return true;
+        } finally {
+            if (!queued) {
+                writeBehind.release(1);
+            }
+        }
+    }
+
+    // Запись в БД выполняется без блокировки коллекции
+    private boolean insertProduct(Product product, User user) throws Exception {
+        Long id = databaseManager.addProduct(product, user.getId());
+        if (id == null || id <= 0) {
+            return false;
+        }
+        product.setId(id);
+        product.setCreatorId(user.getId());
+        product.setCreationDate(ZonedDateTime.now());
+        return true;
+    }
+
+    // Вызывается под writeLock
+    private void applyAdd(Product product) {
+        if (store.isEmpty()) {
+            this.initTime = product.getCreationDate();
+        }
+        store.put(product);
+        recordChange(product.getId(), product);
+    }
+
+    public boolean removeById(Long id, User user) throws Exception {
+        if (writeBehind != null) {
+            return removeDeferred(id, user) != null;
+        }
         Product product = getById(id);
         if (product != null && product.getCreatorId() == user.getId()) {
             if (databaseManager.removeProduct(id)) {
-                boolean removed = collection.removeIf(p -> p.getId().equals(id));
-                if (removed) {
-                    // Поддерживаем сортировку после удаления
-                    collection.sort(Product::compareTo);
-                }
-                return removed;
+                applyOrResolve(id, product, null);
+                return true;
             }
         }
         return false;
     }
 
-    public synchronized void clear(User user) throws Exception {
-        // Удаляем только продукты, созданные данным пользователем
-        if (databaseManager.clearUserProducts(user.getId())) {
-            collection.removeIf(p -> p.getCreatorId() == user.getId());
+    // Удаляет продукт по id или, если id == null, первый в коллекции. Возвращает удаленный продукт
+    private Product removeDeferred(Long id, User user) throws Exception {
+        writeBehind.reserve(1);
+        boolean queued = false;
+        try {
+            Product product;
+            long position;
+            writeLock.lock();
+            try {
+                product = id != null ? store.get(id) : store.first();
+                if (product == null || product.getCreatorId() != user.getId()) {
+                    return null;
+                }
+                List<Long> released = product.getManufacturer() != null
+                        ? Collections.singletonList(product.getManufacturer().getId()) : Collections.emptyList();
+                position = writeBehind.remove(version + 1, Collections.singletonList(product.getId()), released);
+                queued = true;
+                store.remove(product.getId());
+                recordChange(product.getId(), null);
+            } finally {
+                writeLock.unlock();
+            }
+            writeBehind.sync(position);
+            return product;
+        } finally {
+            if (!queued) {
+                writeBehind.release(1);
+            }
+        }
+    }
+
+    public void clear(User user) throws Exception {
+        if (writeBehind != null) {
+            clearDeferred(user);
+            return;
+        }
+        // Удаляем только продукты, созданные данным пользователем; в памяти удаляются
+        // ровно те id, которые удалила БД, даже если параллельно добавлялись новые
+        List<Long> removedIds = databaseManager.clearUserProducts(user.getId());
+        if (removedIds.isEmpty()) {
+            return;
+        }
+        writeLock.lock();
+        try {
+            List<Long> removed = new ArrayList<>();
+            for (Long id : removedIds) {
+                if (store.remove(id) != null) {
+                    removed.add(id);
+                }
+            }
+            if (!removed.isEmpty()) {
+                synchronized (changeLog) {
+                    version++;
+                    for (Long id : removed) {
+                        changeLog.append(version, id, null);
+                    }
+                    publishHead();
+                }
+                notifyChangeListeners();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // Все удаления одним изменением в журнале и очереди
+    private void clearDeferred(User user) throws Exception {
+        writeBehind.reserve(1);
+        boolean queued = false;
+        try {
+            long position;
+            writeLock.lock();
+            try {
+                List<Long> removed = new ArrayList<>();
+                List<Long> released = new ArrayList<>();
+                for (Product product : store.values()) {
+                    if (product.getCreatorId() == user.getId()) {
+                        removed.add(product.getId());
+                        if (product.getManufacturer() != null) {
+                            released.add(product.getManufacturer().getId());
+                        }
+                    }
+                }
+                if (removed.isEmpty()) {
+                    return;
+                }
+                position = writeBehind.remove(version + 1, removed, released);
+                queued = true;
+                for (Long id : removed) {
+                    store.remove(id);
+                }
+                synchronized (changeLog) {
+                    version++;
+                    for (Long id : removed) {
+                        changeLog.append(version, id, null);
+                    }
+                    publishHead();
+                }
+                notifyChangeListeners();
+            } finally {
+                writeLock.unlock();
+            }
+            writeBehind.sync(position);
+        } finally {
+            if (!queued) {
+                writeBehind.release(1);
+            }
         }
     }
 
-    public synchronized Product head() {
-        return collection.peekFirst();
+    public Product head() {
+        return head;
     }
 
-    public synchronized Product removeHead(User user) throws Exception {
-        Product product = collection.peekFirst();
+    public Product removeHead(User user) throws Exception {
+        if (writeBehind != null) {
+            return removeDeferred(null, user);
+        }
+        Product product = head();
         if (product != null && product.getCreatorId() == user.getId()) {
             if (databaseManager.removeProduct(product.getId())) {
-                Product removed = collection.pollFirst();
-                // Поддерживаем сортировку после удаления
-                collection.sort(Product::compareTo);
-                return removed;
+                applyOrResolve(product.getId(), product, null);
+                return product;
             }
         }
         return null;
     }
 
+    // Применяет изменение, если продукт в памяти остался тем же объектом, что был прочитан
+    // до записи в БД (каждое изменение кладет новый объект, так что он служит версией продукта).
+    // replacement == null - продукт удален. Вызывается без блокировки.
+    private boolean applyIfUnchanged(Long id, Product expected, Product replacement) {
+        writeLock.lock();
+        try {
+            if (store.get(id) != expected) {
+                return false;
+            }
+            if (expected == null && replacement == null) {
+                return true;
+            }
+            if (replacement == null) {
+                store.remove(id);
+            } else {
+                store.put(replacement);
+            }
+            recordChange(id, replacement);
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void applyOrResolve(Long id, Product expected, Product replacement) throws Exception {
+        if (!applyIfUnchanged(id, expected, replacement)) {
+            resolveConflict(id);
+        }
+    }
+
+    // Продукт изменил другой писатель, пока шла запись в БД: порядок изменений знает только БД,
+    // поэтому берем из нее актуальную строку и повторяем применение
+    private void resolveConflict(Long id) throws Exception {
+        for (int attempt = 0; attempt < MAX_CONFLICT_RETRIES; attempt++) {
+            Product expected = getById(id);
+            Product actual = databaseManager.getProductById(id);
+            if (applyIfUnchanged(id, expected, actual)) {
+                return;
+            }
+        }
+        System.err.println("Не удалось согласовать продукт " + id + " с БД после "
+                + MAX_CONFLICT_RETRIES + " попыток");
+    }
+
+    // БД отвергла отложенное изменение (например, повтор part_number): возвращаем продукт
+    // к состоянию в БД. Вызывается потоком отложенной записи
+    private void resolveRejected(Long id) {
+        try {
+            resolveConflict(id);
+        } catch (Exception e) {
+            System.err.println("Не удалось согласовать продукт " + id + " с БД: " + e.getMessage());
+        }
+    }
+
+    // product == null - продукт удален
+    private void recordChange(Long id, Product product) {
+        synchronized (changeLog) {
+            version++;
+            changeLog.append(version, id, product);
+            publishHead();
+        }
+        notifyChangeListeners();
+    }
+
+    // Вызывается под writeLock вместе с изменением версии
+    private void publishHead() {
+        head = store.first();
+    }
+
+    // Список продуктов текущей версии. Строится под writeLock при первом чтении после
+    // изменения; пока изменений нет, все читатели получают готовый снимок без блокировок
+    private Snapshot snapshot() {
+        Snapshot current = snapshot;
+        if (current.version == version) {
+            return current;
+        }
+        writeLock.lock();
+        try {
+            current = snapshot;
+            if (current.version != version) {
+                current = new Snapshot(version, new ArrayList<>(store.values()));
+                snapshot = current;
+            }
+            return current;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // Писатель только ставит рассылку в очередь, слушателей обходит поток уведомлений
+    private void notifyChangeListeners() {
+        if (changeListeners.isEmpty() || !notifyScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            notifier.execute(() -> {
+                notifyScheduled.set(false);
+                long current = version;
+                for (LongConsumer listener : changeListeners) {
+                    listener.accept(current);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            notifyScheduled.set(false);
+        }
+    }
+
+    public void addChangeListener(LongConsumer listener) {
+        changeListeners.add(listener);
+    }
+
+    public void removeChangeListener(LongConsumer listener) {
+        changeListeners.remove(listener);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public long getEpoch() {
+        return epoch;
+    }
+
+    // Изменения после версии клиента; полный снимок, если журнал уже усечен или сервер перезапущен
+    public ProductDelta getChangesSince(long clientEpoch, long sinceVersion) {
+        long current;
+        Map<Long, Product> changes;
+        synchronized (changeLog) {
+            current = version;
+            changes = clientEpoch == epoch ? changeLog.since(sinceVersion, current) : null;
+        }
+        if (changes == null && clientEpoch == epoch && writeBehind != null) {
+            // ChangeLog помнит только последние изменения, журнал на диске - больше
+            changes = writeBehind.changesSince(sinceVersion, current);
+        }
+        if (changes == null) {
+            // Полный снимок несет собственную версию, она может быть новее current
+            Snapshot full = snapshot();
+            return new ProductDelta(epoch, full.version, true, new ArrayList<>(full.products), new ArrayList<>());
+        }
+
+        List<Product> upserts = new ArrayList<>();
+        List<Long> removedIds = new ArrayList<>();
+        for (Map.Entry<Long, Product> change : changes.entrySet()) {
+            if (change.getValue() != null) {
+                upserts.add(change.getValue());
+            } else {
+                removedIds.add(change.getKey());
+            }
+        }
+        return new ProductDelta(epoch, current, false, upserts, removedIds);
+    }
+
     public LinkedList<Product> getCollection() {
-        return new LinkedList<>(collection);
+        return new LinkedList<>(snapshot().products);
     }
 
     public double getAverageManufactureCost() {
-        return collection.stream()
+        return snapshot().products.stream()
                 .filter(p -> p.getManufactureCost() != null)
                 .mapToDouble(Product::getManufactureCost)
                 .average()
@@ -104,19 +729,17 @@ public class CollectionManager {
     }
 
     public Product getById(Long id) {
-        return collection.stream()
-                .filter(p -> p.getId().equals(id))
-                .findFirst()
-                .orElse(null);
+        return store.get(id);
     }
 
     public Product getMin() {
-        return collection.stream()
-                .min(Product::compareTo)
-                .orElse(null);
+        return head();
     }
 
-    public synchronized boolean updateProduct(Long id, Product newProduct, User user) throws Exception {
+    public boolean updateProduct(Long id, Product newProduct, User user) throws Exception {
+        if (writeBehind != null) {
+            return updateDeferred(id, newProduct, user);
+        }
         Product oldProduct = getById(id);
         if (oldProduct != null && oldProduct.getCreatorId() == user.getId()) {
             if (databaseManager.updateProduct(id, newProduct, user.getId())) {
@@ -124,46 +747,82 @@ public class CollectionManager {
                 newProduct.setCreatorId(user.getId());
                 newProduct.setCreationDate(oldProduct.getCreationDate());
 
-                collection.remove(oldProduct);
-                boolean added = collection.add(newProduct);
-                if (added) {
-                    // Поддерживаем сортировку после обновления
-                    collection.sort(Product::compareTo);
-                }
-                return added;
+                // Замена по id переставляет продукт в упорядоченном индексе
+                applyOrResolve(id, oldProduct, newProduct);
+                return true;
             }
         }
         return false;
     }
 
-    // Новые методы для дополнительных команд
-    public synchronized void shuffle() {
-        // Перемешиваем элементы коллекции
-        List<Product> tempList = new LinkedList<>(collection);
-        java.util.Collections.shuffle(tempList);
-        collection.clear();
-        collection.addAll(tempList);
+    // Организация продукта обновляется на месте под тем же id, новая получает заранее выданный id
+    private boolean updateDeferred(Long id, Product newProduct, User user) throws Exception {
+        writeBehind.reserve(1);
+        boolean queued = false;
+        try {
+            Long newOrganizationId = newProduct.getManufacturer() != null ? writeBehind.nextOrganizationId() : null;
+            long position;
+            writeLock.lock();
+            try {
+                Product oldProduct = store.get(id);
+                if (oldProduct == null || oldProduct.getCreatorId() != user.getId()) {
+                    return false;
+                }
+                newProduct.setId(id);
+                newProduct.setCreatorId(user.getId());
+                newProduct.setCreationDate(oldProduct.getCreationDate());
+                Long released = null;
+                if (newProduct.getManufacturer() != null) {
+                    newProduct.getManufacturer().setId(oldProduct.getManufacturer() != null
+                            ? oldProduct.getManufacturer().getId() : newOrganizationId);
+                    newProduct.getManufacturer().setCreatorId(user.getId());
+                } else if (oldProduct.getManufacturer() != null) {
+                    released = oldProduct.getManufacturer().getId();
+                }
+                position = writeBehind.upsert(version + 1, newProduct, released);
+                queued = true;
+                store.put(newProduct);
+                recordChange(id, newProduct);
+            } finally {
+                writeLock.unlock();
+            }
+            writeBehind.sync(position);
+            return true;
+        } finally {
+            if (!queued) {
+                writeBehind.release(1);
+            }
+        }
     }
 
-    public synchronized void sort() {
-        // Сортируем коллекцию в естественном порядке
-        collection.sort(Product::compareTo);
+    // Дописывает в БД накопленные изменения; вызывается при остановке сервера
+    public void close() {
+        // Начатые асинхронные изменения должны попасть в журнал до его закрытия
+        databaseExecutor.shutdown();
+        try {
+            databaseExecutor.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (writeBehind != null) {
+            writeBehind.close();
+        }
+        notifier.shutdown();
     }
 
+    // Новые методы для дополнительных команд
     public List<Product> filterByPrice(Long price) {
-        return collection.stream()
+        return snapshot().products.stream()
                 .filter(p -> p.getPrice() != null && p.getPrice().equals(price))
                 .collect(Collectors.toList());
     }
 
     public List<Product> getAscending() {
-        return collection.stream()
-                .sorted(Product::compareTo)
-                .collect(Collectors.toList());
+        return new ArrayList<>(snapshot().products);
     }
 
     public List<Long> getAscendingPrices() {
-        return collection.stream()
+        return snapshot().products.stream()
                 .filter(p -> p.getPrice() != null)
                 .map(Product::getPrice)
                 .sorted()
@@ -172,8 +831,8 @@ public class CollectionManager {
 
     @Override
     public String toString() {
-        return collection.stream()
+        return snapshot().products.stream()
                 .map(Product::toString)
                 .collect(Collectors.joining("\n"));
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,176 @@
+package org.example.management;
+
+import java.lang.invoke.VarHandle;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// История команд отдельно для каждого пользователя: кольцевой буфер фиксированного размера
+// из примитивных ячеек (номер команды, время начала, длительность). Запись без блокировок:
+// писатель получает номер записи счетчиком и захватывает ячейку сменой ее номера
+// последовательности на нечетный, читатель пропускает ячейки, которые в этот момент
+// перезаписываются. Запись уже известного пользователя ничего не выделяет в куче
+public class CommandHistory {
+    private final int capacity;
+    private final String[] names;
+    private final Map<String, Integer> codes;
+    // Заменяется целиком при появлении нового пользователя (под монитором истории)
+    private volatile RingTable table = new RingTable(new int[0], new Ring[0]);
+
+    // Запись истории для вывода
+    public static final class Entry {
+        private final String command;
+        private final long timestamp;
+        private final long latencyNanos;
+
+        Entry(String command, long timestamp, long latencyNanos) {
+            this.command = command;
+            this.timestamp = timestamp;
+            this.latencyNanos = latencyNanos;
+        }
+
+        public String getCommand() {
+            return command;
+        }
+
+        public Instant getTimestamp() {
+            return Instant.ofEpochMilli(timestamp);
+        }
+
+        public double getLatencyMillis() {
+            return latencyNanos / 1_000_000.0;
+        }
+    }
+
+    // id пользователей по возрастанию и их кольца: поиск двоичный, без упаковки id
+    private static final class RingTable {
+        final int[] userIds;
+        final Ring[] rings;
+
+        RingTable(int[] userIds, Ring[] rings) {
+            this.userIds = userIds;
+            this.rings = rings;
+        }
+    }
+
+    private static final class Ring {
+        final AtomicLong next = new AtomicLong();
+        // Для записи с номером n: 2n + 1 во время записи, 2n + 2 после.
+        // Нечетное значение - ячейка занята писателем
+        final AtomicLongArray sequences;
+        final AtomicIntegerArray commands;
+        final AtomicLongArray timestamps;
+        final AtomicLongArray latencies;
+
+        Ring(int capacity) {
+            sequences = new AtomicLongArray(capacity);
+            commands = new AtomicIntegerArray(capacity);
+            timestamps = new AtomicLongArray(capacity);
+            latencies = new AtomicLongArray(capacity);
+        }
+    }
+
+    public CommandHistory(Collection<String> commandNames, int capacity) {
+        this.capacity = Math.max(1, capacity);
+        this.names = commandNames.toArray(new String[0]);
+        Map<String, Integer> byName = new HashMap<>();
+        for (int i = 0; i < names.length; i++) {
+            byName.put(names[i], i);
+        }
+        this.codes = Map.copyOf(byName);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    // commandName - имя из числа зарегистрированных в нижнем регистре
+    public void record(int userId, String commandName, long timestamp, long latencyNanos) {
+        Integer code = codes.get(commandName);
+        if (code == null) {
+            return;
+        }
+        Ring ring = ring(userId, true);
+        long n = ring.next.getAndIncrement();
+        int slot = (int) (n % capacity);
+        // Ячейку занимает CAS с четного номера более старой записи на 2n + 1. Если ее еще
+        // дописывает отставший писатель более старой записи, ждем его; если ее уже занял
+        // писатель с номером n + capacity, эта запись все равно была бы вытеснена
+        while (true) {
+            long sequence = ring.sequences.get(slot);
+            if (sequence >= 2 * n + 1) {
+                return;
+            }
+            if ((sequence & 1) != 0) {
+                Thread.onSpinWait();
+            } else if (ring.sequences.compareAndSet(slot, sequence, 2 * n + 1)) {
+                break;
+            }
+        }
+        // Захват ячейки должен стать виден раньше новых данных, а отметка "записано" - позже
+        VarHandle.storeStoreFence();
+        ring.commands.setOpaque(slot, code);
+        ring.timestamps.setOpaque(slot, timestamp);
+        ring.latencies.setOpaque(slot, latencyNanos);
+        ring.sequences.setRelease(slot, 2 * n + 2);
+    }
+
+    // Последние записи пользователя, от старых к новым
+    public List<Entry> get(int userId) {
+        List<Entry> entries = new ArrayList<>(capacity);
+        Ring ring = ring(userId, false);
+        if (ring == null) {
+            return entries;
+        }
+        long end = ring.next.get();
+        for (long n = Math.max(0, end - capacity); n < end; n++) {
+            int slot = (int) (n % capacity);
+            long sequence = ring.sequences.getAcquire(slot);
+            int code = ring.commands.getOpaque(slot);
+            long timestamp = ring.timestamps.getOpaque(slot);
+            long latency = ring.latencies.getOpaque(slot);
+            VarHandle.loadLoadFence();
+            // Ячейку еще пишут или уже перезаписали более новой командой
+            if (sequence != 2 * n + 2 || ring.sequences.getOpaque(slot) != sequence) {
+                continue;
+            }
+            entries.add(new Entry(names[code], timestamp, latency));
+        }
+        return entries;
+    }
+
+    private Ring ring(int userId, boolean create) {
+        RingTable current = table;
+        int index = Arrays.binarySearch(current.userIds, userId);
+        if (index >= 0 || !create) {
+            return index >= 0 ? current.rings[index] : null;
+        }
+        synchronized (this) {
+            current = table;
+            index = Arrays.binarySearch(current.userIds, userId);
+            if (index >= 0) {
+                return current.rings[index];
+            }
+            int insert = -index - 1;
+            int size = current.userIds.length;
+            int[] userIds = new int[size + 1];
+            Ring[] rings = new Ring[size + 1];
+            System.arraycopy(current.userIds, 0, userIds, 0, insert);
+            System.arraycopy(current.rings, 0, rings, 0, insert);
+            System.arraycopy(current.userIds, insert, userIds, insert + 1, size - insert);
+            System.arraycopy(current.rings, insert, rings, insert + 1, size - insert);
+            Ring ring = new Ring(capacity);
+            userIds[insert] = userId;
+            rings[insert] = ring;
+            table = new RingTable(userIds, rings);
+            return ring;
+        }
+    }
+}
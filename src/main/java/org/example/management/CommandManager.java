@@ -5,18 +5,44 @@ import org.example.data.User;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
 
 public class CommandManager {
+    private static final int HISTORY_SIZE = 15;
     private final Map<String, Command> commands = new HashMap<>();
     private final CollectionManager collectionManager;
     private final DatabaseManager databaseManager;
     private final Scanner scanner;
+    // Очереди команд пользователей, пока в них есть невыполненные команды
+    private final Map<Integer, UserQueue> userQueues = new ConcurrentHashMap<>();
+    // true в потоке, выполняющем синхронную команду: вложенные команды скрипта уже в очереди пользователя
+    private static final ThreadLocal<Boolean> insideCommand = ThreadLocal.withInitial(() -> false);
+    private final CommandHistory history;
+
+    // tail завершается вместе со всеми поставленными командами пользователя,
+    // lastWrite - с последней изменяющей
+    private static final class UserQueue {
+        final CompletableFuture<?> tail;
+        final CompletableFuture<?> lastWrite;
+
+        UserQueue(CompletableFuture<?> tail, CompletableFuture<?> lastWrite) {
+            this.tail = tail;
+            this.lastWrite = lastWrite;
+        }
+    }
 
     public CommandManager(CollectionManager collectionManager, DatabaseManager databaseManager, Scanner scanner) {
         this.collectionManager = collectionManager;
         this.databaseManager = databaseManager;
         this.scanner = scanner;
         registerCommands();
+        history = new CommandHistory(commands.keySet(), HISTORY_SIZE);
     }
 
     private void registerCommands() {
@@ -34,7 +60,7 @@ public class CommandManager {
         commands.put("remove_head", new RemoveHeadCommand(collectionManager, databaseManager));
         commands.put("average_of_manufacture_cost", new AverageOfManufactureCostCommand(collectionManager));
         commands.put("sort", new SortCommand(collectionManager));
-        commands.put("history", new HistoryCommand());
+        commands.put("history", new HistoryCommand(this));
         commands.put("filter_by_price", new FilterByPriceCommand(collectionManager));
         commands.put("print_ascending", new PrintAscendingCommand(collectionManager));
         commands.put("print_field_ascending_price", new PrintFieldAscendingPriceCommand(collectionManager));
@@ -47,17 +73,142 @@ public class CommandManager {
         commands.put("help", new HelpCommand(this));
     }
 
+    // Синхронный вызов: команды скрипта и консоль сервера
     public String executeCommand(String commandName, String[] args, User user) throws Exception {
-        Command cmd = commands.get(commandName.toLowerCase());
+        if (insideCommand.get()) {
+            String name = commandName.toLowerCase();
+            Command cmd = getCommand(name, commandName);
+            long timestamp = System.currentTimeMillis();
+            long start = System.nanoTime();
+            try {
+                return cmd.execute(args, user);
+            } finally {
+                record(name, user, timestamp, start);
+            }
+        }
+        try {
+            return executeCommandAsync(commandName, args, user, Runnable::run).toCompletableFuture().join();
+        } catch (CompletionException e) {
+            Throwable cause = AsyncCommand.unwrap(e);
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        }
+    }
+
+    // Результат приходит в CompletionStage. Обычные команды выполняются в executor,
+    // асинхронные (AsyncCommand) не занимают поток на время ожидания БД.
+    // Команды одного пользователя (запросы клиента идут конвейером) выполняются в порядке
+    // поступления: изменяющая ждет все предыдущие, чтение - только предыдущую изменяющую,
+    // так что подряд идущие чтения выполняются параллельно, но видят свои записи.
+    // Команды разных пользователей идут параллельно: согласованность коллекции
+    // обеспечивает CollectionManager, чтение работает со снимком и не ждет чужих писателей
+    public CompletionStage<String> executeCommandAsync(String commandName, String[] args, User user, Executor executor) {
+        String name = commandName.toLowerCase();
+        Command cmd;
+        try {
+            cmd = getCommand(name, commandName);
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return enqueue(user != null ? user.getId() : -1, cmd.isReadOnly(),
+                () -> start(name, cmd, args, user, executor));
+    }
+
+    // name - имя команды в нижнем регистре, commandName - как его ввел пользователь
+    private Command getCommand(String name, String commandName) {
+        Command cmd = commands.get(name);
         if (cmd == null) {
             throw new IllegalArgumentException("Неизвестная команда: " + commandName);
         }
+        return cmd;
+    }
+
+    // В историю попадают и неудачные команды, кроме самой history; name в нижнем регистре
+    private void record(String name, User user, long timestamp, long start) {
+        if (!name.equals("history")) {
+            history.record(user != null ? user.getId() : -1, name, timestamp, System.nanoTime() - start);
+        }
+    }
+
+    // Время выполнения считается с начала команды, без ожидания предыдущих команд пользователя
+    private CompletableFuture<String> start(String name, Command cmd, String[] args, User user,
+                                            Executor executor) {
+        long timestamp = System.currentTimeMillis();
+        long start = System.nanoTime();
+        CompletableFuture<String> result = start(cmd, args, user, executor);
+        result.whenComplete((value, error) -> record(name, user, timestamp, start));
+        return result;
+    }
 
-        if (!commandName.equalsIgnoreCase("history")) {
-            HistoryCommand.addToHistory(commandName);
+    private CompletableFuture<String> start(Command cmd, String[] args, User user, Executor executor) {
+        if (cmd instanceof AsyncCommand) {
+            try {
+                return ((AsyncCommand) cmd).executeAsync(args, user).toCompletableFuture();
+            } catch (Exception e) {
+                return CompletableFuture.failedFuture(e);
+            }
         }
+        // Обычная команда блокирует поток, поэтому выполняется в executor
+        CompletableFuture<String> future = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                String value = null;
+                Throwable failure = null;
+                insideCommand.set(true);
+                try {
+                    value = cmd.execute(args, user);
+                } catch (Throwable e) {
+                    failure = e;
+                } finally {
+                    insideCommand.remove();
+                }
+                if (failure != null) {
+                    future.completeExceptionally(failure);
+                } else {
+                    future.complete(value);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    // Очередь - цепочка future, поэтому ожидающие команды не занимают потоков
+    private CompletableFuture<String> enqueue(int userId, boolean readOnly, Supplier<CompletableFuture<String>> task) {
+        CompletableFuture<String> result = new CompletableFuture<>();
+        CompletableFuture<?>[] awaited = new CompletableFuture<?>[1];
+        UserQueue queue = userQueues.compute(userId, (id, current) -> {
+            if (!readOnly) {
+                awaited[0] = current != null ? current.tail : null;
+                return new UserQueue(result, result);
+            }
+            awaited[0] = current != null ? current.lastWrite : null;
+            return current == null ? new UserQueue(result, null)
+                    : new UserQueue(CompletableFuture.allOf(current.tail, result), current.lastWrite);
+        });
+        CompletableFuture<?> previous = awaited[0];
+        Runnable run = () -> task.get().whenComplete((value, error) -> {
+            if (error != null) {
+                result.completeExceptionally(AsyncCommand.unwrap(error));
+            } else {
+                result.complete(value);
+            }
+        });
+        if (previous == null) {
+            run.run();
+        } else {
+            previous.whenComplete((value, error) -> run.run());
+        }
+        // Очередь удаляется, когда выполнено все, что в нее поставлено
+        queue.tail.whenComplete((value, error) -> userQueues.remove(userId, queue));
+        return result;
+    }
 
-        return cmd.execute(args, user);
+    public CommandHistory getHistory() {
+        return history;
     }
 
     public Map<String, Command> getCommands() {
@@ -0,0 +1,130 @@
+package org.example.management;
+
+import org.example.data.Product;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Согласование коллекции в памяти с изменениями других серверов. Триггер на products
+// шлет уведомление на каждое изменение строки, этот поток слушает канал по отдельному
+// соединению, дочитывает измененные строки пачкой и применяет их к коллекции.
+// После каждого (пере)подключения коллекция сверяется с БД: уведомления, отправленные,
+// пока соединения не было, потеряны
+public class DatabaseChangeListener {
+    private static final int POLL_TIMEOUT_MS = 500;
+    // Проверка соединения, если уведомлений долго нет: обрыв туннеля иначе не заметен
+    private static final long IDLE_CHECK_MS = 30_000;
+    private static final long MIN_RECONNECT_DELAY_MS = 1000;
+    private static final long MAX_RECONNECT_DELAY_MS = 30_000;
+
+    private final DatabaseManager databaseManager;
+    private final CollectionManager collectionManager;
+    private final String nodeId = DatabaseConnection.getNodeId();
+    private volatile boolean running;
+    private Thread thread;
+
+    public DatabaseChangeListener(DatabaseManager databaseManager, CollectionManager collectionManager) {
+        this.databaseManager = databaseManager;
+        this.collectionManager = collectionManager;
+    }
+
+    // -Ddb.listen=false отключает слежение за другими серверами
+    public static boolean isEnabled() {
+        return Boolean.parseBoolean(System.getProperty("db.listen", "true"));
+    }
+
+    public void start() {
+        running = true;
+        thread = new Thread(this::run, "db-change-listener");
+        thread.setDaemon(true);
+        thread.start();
+        System.out.println("Слежение за изменениями других серверов включено (узел " + nodeId + ")");
+    }
+
+    public void stop() {
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    private void run() {
+        long delay = MIN_RECONNECT_DELAY_MS;
+        while (running) {
+            try (Connection conn = DatabaseConnection.openDedicatedConnection()) {
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute("LISTEN " + DatabaseManager.PRODUCT_CHANGES_CHANNEL);
+                }
+                collectionManager.resyncWithDatabase();
+                delay = MIN_RECONNECT_DELAY_MS;
+                listen(conn);
+            } catch (Exception e) {
+                if (!running) {
+                    return;
+                }
+                System.err.println("Ошибка слежения за изменениями БД, переподключение через " + delay + " мс: "
+                        + e.getMessage());
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException ie) {
+                    return;
+                }
+                delay = Math.min(delay * 2, MAX_RECONNECT_DELAY_MS);
+            }
+        }
+    }
+
+    private void listen(Connection conn) throws Exception {
+        PGConnection pgConnection = conn.unwrap(PGConnection.class);
+        long lastActivity = System.currentTimeMillis();
+        while (running) {
+            PGNotification[] notifications = pgConnection.getNotifications(POLL_TIMEOUT_MS);
+            if (notifications != null && notifications.length > 0) {
+                apply(notifications);
+                lastActivity = System.currentTimeMillis();
+            } else if (System.currentTimeMillis() - lastActivity > IDLE_CHECK_MS) {
+                if (!conn.isValid(5)) {
+                    throw new SQLException("соединение для уведомлений потеряно");
+                }
+                lastActivity = System.currentTimeMillis();
+            }
+        }
+    }
+
+    // Для каждого продукта важна только последняя операция; строки вставленных и измененных
+    // продуктов читаются одним запросом, и если строки уже нет, продукт успели удалить
+    private void apply(PGNotification[] notifications) throws Exception {
+        Map<Long, Boolean> removedById = new LinkedHashMap<>();
+        for (PGNotification notification : notifications) {
+            String[] parts = notification.getParameter().split(":", 3);
+            if (parts.length < 3 || nodeId.equals(parts[2])) {
+                continue;
+            }
+            try {
+                Long id = Long.parseLong(parts[1]);
+                removedById.remove(id);
+                removedById.put(id, "D".equals(parts[0]));
+            } catch (NumberFormatException e) {
+                System.err.println("Некорректное уведомление об изменении: " + notification.getParameter());
+            }
+        }
+        if (removedById.isEmpty()) {
+            return;
+        }
+
+        Map<Long, Product> rows = databaseManager.getProductsByIds(removedById.entrySet().stream()
+                .filter(entry -> !entry.getValue())
+                .map(Map.Entry::getKey)
+                .toList());
+        Map<Long, Product> changes = new LinkedHashMap<>();
+        for (Long id : removedById.keySet()) {
+            changes.put(id, rows.get(id));
+        }
+        collectionManager.applyRemoteChanges(changes);
+    }
+}
@@ -1,14 +1,18 @@
 package org.example.management;
 
-import com.jcraft.jsch.JSch;
 import com.jcraft.jsch.JSchException;
-import com.jcraft.jsch.Session;
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
+import org.example.util.LatencyHistogram;
+
 import java.sql.Connection;
+import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.util.Properties;
+import java.util.StringJoiner;
+import java.util.UUID;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 public class DatabaseConnection {
     private static final HikariDataSource dataSource;
@@ -26,18 +30,44 @@ public class DatabaseConnection {
     private static final String DB_USER = "s465751";
     private static final String DB_NAME = "studs";
     private static final String DB_PASSWORD = "BiX8U9qeW7Kg8RhO";
+    // Число SSH-сессий до БД; сессия i пробрасывает порт LOCAL_FORWARDED_PORT + i
+    private static final int SSH_SESSIONS = Math.max(1, Integer.getInteger("db.sshSessions", 2));
+    private static final String JDBC_URL = buildJdbcUrl();
+
+    // Имя экземпляра сервера, передается в БД как application_name: по нему сервер
+    // узнает свои изменения в уведомлениях об изменении таблицы products
+    private static final String NODE_ID = System.getProperty("server.nodeId",
+            "lab8-" + UUID.randomUUID().toString().substring(0, 8));
+
+    // Кэш серверных prepared statements драйвера PostgreSQL живет в соединении и переживает
+    // возврат соединения в пул. После prepareThreshold выполнений запрос разбирается и
+    // планируется сервером один раз (0 - кэш отключен)
+    private static final int PREPARE_THRESHOLD = Integer.getInteger("db.prepareThreshold", 5);
+    private static final int STATEMENT_CACHE_QUERIES = Integer.getInteger("db.statementCacheQueries", 256);
+    private static final int STATEMENT_CACHE_SIZE_MIB = Integer.getInteger("db.statementCacheSizeMiB", 5);
+
+    // Проверка SSH-сессий фоновым потоком, а не на пути запроса
+    private static final long TUNNEL_CHECK_MS = TimeUnit.SECONDS.toMillis(Integer.getInteger("db.tunnelCheckSec", 5));
+
+    // Метрики получения соединений: на успешном пути ничего не печатается
+    private static final LatencyHistogram acquireLatency = new LatencyHistogram();
+    private static final LongAdder acquireFailures = new LongAdder();
+    private static final LongAdder retries = new LongAdder();
 
-    private static Session sshSession;
+    private static final SshTunnelSupervisor tunnels = new SshTunnelSupervisor(SSH_USER, SSH_PASSWORD,
+            SSH_HOST, SSH_PORT, DB_REMOTE_HOST, DB_REMOTE_PORT, LOCAL_FORWARDED_PORT, SSH_SESSIONS, TUNNEL_CHECK_MS);
 
     static {
         try {
             Class.forName("org.postgresql.Driver");
             System.out.println("PostgreSQL JDBC Driver успешно зарегистрирован");
 
-            establishSshTunnel();
+            System.out.println("Установка " + SSH_SESSIONS + " SSH-сессий с " + SSH_HOST + ":" + SSH_PORT
+                    + " (пользователь " + SSH_USER + ")...");
+            tunnels.start();
 
             HikariConfig config = new HikariConfig();
-            config.setJdbcUrl("jdbc:postgresql://localhost:" + LOCAL_FORWARDED_PORT + "/" + DB_NAME);
+            config.setJdbcUrl(JDBC_URL);
             config.setUsername(DB_USER);
             config.setPassword(DB_PASSWORD);
 
@@ -49,7 +79,14 @@ public class DatabaseConnection {
             config.setLeakDetectionThreshold(TimeUnit.SECONDS.toMillis(10));
             config.addDataSourceProperty("socketTimeout", "30");
             config.addDataSourceProperty("tcpKeepAlive", "true");
-            config.addDataSourceProperty("prepareThreshold", "0");
+            config.addDataSourceProperty("prepareThreshold", String.valueOf(PREPARE_THRESHOLD));
+            config.addDataSourceProperty("preparedStatementCacheQueries", String.valueOf(STATEMENT_CACHE_QUERIES));
+            config.addDataSourceProperty("preparedStatementCacheSizeMiB", String.valueOf(STATEMENT_CACHE_SIZE_MIB));
+            // Пакеты INSERT отправляются как многострочные INSERT (saveCollection)
+            config.addDataSourceProperty("reWriteBatchedInserts", "true");
+            config.addDataSourceProperty("ApplicationName", NODE_ID);
+            System.out.println("[HikariCP] prepareThreshold=" + PREPARE_THRESHOLD
+                    + ", кэш запросов: " + STATEMENT_CACHE_QUERIES + " (" + STATEMENT_CACHE_SIZE_MIB + " МиБ)");
             config.setValidationTimeout(TimeUnit.SECONDS.toMillis(5));
             config.setConnectionTestQuery("SELECT 1");
             config.setInitializationFailTimeout(TimeUnit.SECONDS.toMillis(30));
@@ -65,6 +102,16 @@ public class DatabaseConnection {
         }
     }
 
+    // Несколько хостов в URL: драйвер выбирает порт для нового соединения случайно
+    // (loadBalanceHosts) и переходит к следующему, если сессия этого порта оборвана
+    private static String buildJdbcUrl() {
+        StringJoiner hosts = new StringJoiner(",", "jdbc:postgresql://", "/" + DB_NAME);
+        for (int i = 0; i < SSH_SESSIONS; i++) {
+            hosts.add("localhost:" + (LOCAL_FORWARDED_PORT + i));
+        }
+        return SSH_SESSIONS > 1 ? hosts + "?loadBalanceHosts=true" : hosts.toString();
+    }
+
     private static void testConnection() throws SQLException {
         try (Connection conn = getConnectionWithRetry()) {
             if (!conn.isValid(5)) {
@@ -78,53 +125,70 @@ public class DatabaseConnection {
         return getConnectionWithRetry();
     }
 
+    // Отдельное соединение вне пула для долгого ожидания (LISTEN): без socketTimeout
+    // и без проверки утечек, закрывается вызывающим
+    public static Connection openDedicatedConnection() throws SQLException {
+        Properties props = new Properties();
+        props.setProperty("user", DB_USER);
+        props.setProperty("password", DB_PASSWORD);
+        props.setProperty("ApplicationName", NODE_ID);
+        props.setProperty("tcpKeepAlive", "true");
+        return DriverManager.getConnection(JDBC_URL, props);
+    }
+
+    public static String getNodeId() {
+        return NODE_ID;
+    }
+
+    // Успешное получение соединения только замеряется. При ошибке поток запроса не
+    // восстанавливает SSH-сессии сам, а будит монитор и ждет его результата
     private static Connection getConnectionWithRetry() throws SQLException {
         SQLException lastException = null;
 
         for (int attempt = 1; attempt <= MAX_RETRY_ATTEMPTS; attempt++) {
+            long start = System.nanoTime();
             try {
                 Connection conn = dataSource.getConnection();
-                System.out.printf("[HikariCP] Получено соединение (попытка %d/%d)%n", attempt, MAX_RETRY_ATTEMPTS);
+                acquireLatency.record(System.nanoTime() - start);
                 return conn;
             } catch (SQLException e) {
                 lastException = e;
-                System.err.printf("[HikariCP] Ошибка получения соединения (попытка %d/%d): %s%n",
-                        attempt, MAX_RETRY_ATTEMPTS, e.getMessage());
-
+                acquireFailures.increment();
                 if (attempt < MAX_RETRY_ATTEMPTS) {
+                    retries.increment();
                     try {
-                        Thread.sleep(RETRY_DELAY_MS);
+                        tunnels.awaitActive(RETRY_DELAY_MS);
                     } catch (InterruptedException ie) {
                         Thread.currentThread().interrupt();
                         throw new SQLException("Прервано во время ожидания повторной попытки", ie);
                     }
-
-                    // Проверяем статус SSH-туннеля и переподключаемся при необходимости
-                    if (!isSshTunnelActive()) {
-                        System.out.println("[SSH] Попытка восстановить SSH-туннель...");
-                        try {
-                            reestablishSshTunnel();
-                        } catch (JSchException jse) {
-                            System.err.println("[SSH] Ошибка восстановления туннеля: " + jse.getMessage());
-                        }
-                    }
                 }
             }
         }
 
+        System.err.println("[HikariCP] Не удалось получить соединение: " + lastException.getMessage());
         throw new SQLException("Не удалось получить соединение после " + MAX_RETRY_ATTEMPTS +
                 " попыток", lastException);
     }
 
-    private static boolean isSshTunnelActive() {
-        return sshSession != null && sshSession.isConnected();
+    public static LatencyHistogram getAcquireLatency() {
+        return acquireLatency;
     }
 
-    private static void reestablishSshTunnel() throws JSchException {
-        if (sshSession != null && sshSession.isConnected()) {
-            sshSession.disconnect();
-        }
-        establishSshTunnel();
+    public static long getAcquireFailures() {
+        return acquireFailures.sum();
+    }
+
+    public static long getRetries() {
+        return retries.sum();
+    }
+
+    public static long getTunnelReconnects() {
+        return tunnels.getReconnects();
+    }
+
+    public static int getActiveTunnels() {
+        return tunnels.getActiveCount();
     }
 
     public static void close() {
@@ -132,13 +196,14 @@ public class DatabaseConnection {
             dataSource.close();
             System.out.println("[HikariCP] Пул соединений закрыт");
         }
-        if (sshSession != null && sshSession.isConnected()) {
-            sshSession.disconnect();
-            System.out.println("SSH-сессия закрыта");
-        }
+        tunnels.close();
     }
 
     // Методы для мониторинга
+    public static int getMaximumPoolSize() {
+        return dataSource.getMaximumPoolSize();
+    }
+
     public static int getActiveConnections() {
         return dataSource.getHikariPoolMXBean().getActiveConnections();
     }
@@ -151,31 +216,8 @@ public class DatabaseConnection {
                 dataSource.getHikariPoolMXBean().getTotalConnections(),
                 dataSource.getHikariPoolMXBean().getThreadsAwaitingConnection()
         );
+        System.out.printf("[HikariCP] Получение соединения: %s; ошибок=%d, повторов=%d, SSH-сессий=%d/%d, переподключений=%d%n",
+                acquireLatency.summary(), acquireFailures.sum(), retries.sum(),
+                tunnels.getActiveCount(), SSH_SESSIONS, tunnels.getReconnects());
     }
-
-    public static void establishSshTunnel() throws JSchException {
-        JSch jsch = new JSch();
-        sshSession = jsch.getSession(SSH_USER, SSH_HOST, SSH_PORT);
-        sshSession.setPassword(SSH_PASSWORD);
-
-        System.out.println("Используется SSH-аутентификация по паролю для пользователя " + SSH_USER);
-
-        Properties config = new Properties();
-        config.put("StrictHostKeyChecking", "no");
-        config.put("PreferredAuthentications", "publickey,keyboard-interactive,password");
-        sshSession.setConfig(config);
-
-        System.out.println("Установка SSH-соединения с " + SSH_HOST + ":" + SSH_PORT + "...");
-        sshSession.connect(30000);
-
-        if (!sshSession.isConnected()) {
-            throw new JSchException("Не удалось установить SSH-соединение с " + SSH_HOST);
-        }
-        System.out.println("SSH-соединение с " + SSH_HOST + " установлено.");
-
-        // Устанавливаем проброс локального порта
-        int assignedPort = sshSession.setPortForwardingL(LOCAL_FORWARDED_PORT, DB_REMOTE_HOST, DB_REMOTE_PORT);
-        System.out.println("Локальный порт " + assignedPort + " проброшен на " +
-                DB_REMOTE_HOST + ":" + DB_REMOTE_PORT + " через SSH-туннель.");
-    }
-}
\ No newline at end of file
+}
@@ -5,11 +5,29 @@ import org.example.data.Coordinates;
 import org.example.data.Organization;
 import org.example.data.UnitOfMeasure;
 import org.example.data.User;
+import org.example.util.HashUtil;
 
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.postgresql.copy.CopyManager;
+
+import java.nio.charset.StandardCharsets;
 import java.sql.*;
+import java.time.Instant;
 import java.time.ZoneId;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 public class DatabaseManager {
     private static final String CHECK_DRIVER = "SELECT 1";
@@ -48,34 +66,118 @@ public class DatabaseManager {
             manufacture_cost REAL,
             unit_of_measure VARCHAR(20) NOT NULL,
             manufacturer_id BIGINT REFERENCES organizations(id),
-            creator_id INTEGER REFERENCES users(id)
+            creator_id INTEGER REFERENCES users(id),
+            updated_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT now()
         )
     """;
+    // Время последнего изменения строки: по нему перезапуск со снимка дочитывает только изменения
+    private static final String ADD_UPDATED_AT_COLUMN =
+            "ALTER TABLE products ADD COLUMN IF NOT EXISTS updated_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT now()";
+    private static final String CREATE_UPDATED_AT_INDEX =
+            "CREATE INDEX IF NOT EXISTS products_updated_at_idx ON products (updated_at)";
+    // Каждое изменение строки products отправляет уведомление "операция:id:application_name"
+    // (I, U или D) после фиксации транзакции; серверы слушают канал и обновляют свои коллекции
+    public static final String PRODUCT_CHANGES_CHANNEL = "product_changes";
+    private static final String CREATE_NOTIFY_FUNCTION = """
+        CREATE OR REPLACE FUNCTION notify_product_change() RETURNS trigger AS $$
+        BEGIN
+            PERFORM pg_notify('product_changes', left(TG_OP, 1) || ':'
+                || CASE WHEN TG_OP = 'DELETE' THEN OLD.id ELSE NEW.id END || ':'
+                || current_setting('application_name'));
+            RETURN NULL;
+        END
+        $$ LANGUAGE plpgsql
+    """;
+    private static final String CREATE_NOTIFY_TRIGGER = """
+        DO $$
+        BEGIN
+            IF NOT EXISTS (SELECT 1 FROM pg_trigger
+                           WHERE tgname = 'products_notify' AND tgrelid = 'products'::regclass) THEN
+                CREATE TRIGGER products_notify AFTER INSERT OR UPDATE OR DELETE ON products
+                    FOR EACH ROW EXECUTE FUNCTION notify_product_change();
+            END IF;
+        END
+        $$
+    """;
 
     private static final String INSERT_USER = "INSERT INTO users (username, password_hash) VALUES (?, ?) RETURNING id";
     private static final String SELECT_USER_BY_USERNAME = "SELECT * FROM users WHERE username = ?";
     private static final String SELECT_USER_BY_ID = "SELECT * FROM users WHERE id = ?";
-    private static final String INSERT_ORGANIZATION = """
-        INSERT INTO organizations (name, full_name, employees_count, creator_id)
-        VALUES (?, ?, ?, ?) RETURNING id
-    """;
+    // Каждая мутация продукта - один запрос (один проход через SSH-туннель): организация
+    // создается, изменяется или удаляется в CTE того же оператора. Ограничения внешних ключей
+    // проверяются в конце оператора, а все CTE видят строки до изменения
     private static final String INSERT_PRODUCT = """
+        WITH ins_org AS (
+            INSERT INTO organizations (name, full_name, employees_count, creator_id)
+            SELECT ?, ?, ?, ? WHERE CAST(? AS boolean)
+            RETURNING id
+        )
         INSERT INTO products (name, coordinates_x, coordinates_y, price, part_number, manufacture_cost, unit_of_measure, manufacturer_id, creator_id)
-        VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?) RETURNING id
+        VALUES (?, ?, ?, ?, ?, ?, ?, (SELECT id FROM ins_org), ?)
+        RETURNING id, manufacturer_id
     """;
+    // Явный список столбцов: mapProduct читает их по номеру
     private static final String SELECT_ALL_PRODUCTS = """
-        SELECT p.*, o.id as org_id, o.name as org_name, o.full_name as org_full_name, 
-               o.employees_count as org_employees, o.creator_id as org_creator_id
+        SELECT p.id, p.name, p.coordinates_x, p.coordinates_y, p.creation_date, p.price,
+               p.part_number, p.manufacture_cost, p.unit_of_measure, p.manufacturer_id, p.creator_id,
+               o.name, o.full_name, o.employees_count, o.creator_id
         FROM products p LEFT JOIN organizations o ON p.manufacturer_id = o.id
     """;
+    // Текст запроса - ключ кэша prepared statements в соединении, поэтому все запросы
+    // собраны в константы и не склеиваются на каждом вызове
+    private static final String SELECT_PRODUCT_BY_ID = SELECT_ALL_PRODUCTS + " WHERE p.id = ?";
+    private static final String SELECT_PRODUCTS_IN_RANGE = SELECT_ALL_PRODUCTS + " WHERE p.id > ? AND p.id <= ?";
+    private static final String SELECT_PRODUCTS_CHANGED_SINCE = SELECT_ALL_PRODUCTS + " WHERE p.updated_at > ? OR p.id > ?";
+    private static final String SELECT_PRODUCT_IDS = "SELECT id FROM products ORDER BY id";
+    private static final String SELECT_PRODUCTS_BY_IDS = SELECT_ALL_PRODUCTS + " WHERE p.id = ANY(?)";
+    private static final String SELECT_DATABASE_TIME = "SELECT now()";
+    // Границы диапазонов - квантили id (читается только индекс первичного ключа),
+    // чтобы диапазоны были равны по числу строк, а не по ширине
+    private static final String SELECT_PRODUCT_ID_BOUNDS =
+            "SELECT percentile_disc(CAST(? AS float8[])) WITHIN GROUP (ORDER BY id) FROM products";
+    private static final String SELECT_USERNAME_BY_ID = "SELECT username FROM users WHERE id = ?";
+    // Организация обновляется на месте, создается, если ее не было, или удаляется,
+    // если у продукта ее больше нет и на нее не ссылаются другие продукты
     private static final String UPDATE_PRODUCT = """
-        UPDATE products SET name = ?, coordinates_x = ?, coordinates_y = ?, price = ?, 
-        part_number = ?, manufacture_cost = ?, unit_of_measure = ?, manufacturer_id = ?
-        WHERE id = ? AND creator_id = ?
+        WITH old AS (
+            SELECT id, manufacturer_id FROM products WHERE id = ? AND creator_id = ? FOR UPDATE
+        ), upd_org AS (
+            UPDATE organizations o SET name = ?, full_name = ?, employees_count = ?
+            FROM old
+            WHERE CAST(? AS boolean) AND o.id = old.manufacturer_id AND o.creator_id = ?
+        ), ins_org AS (
+            INSERT INTO organizations (name, full_name, employees_count, creator_id)
+            SELECT ?, ?, ?, ? FROM old
+            WHERE CAST(? AS boolean) AND old.manufacturer_id IS NULL
+            RETURNING id
+        ), upd AS (
+            UPDATE products p SET name = ?, coordinates_x = ?, coordinates_y = ?, price = ?,
+                part_number = ?, manufacture_cost = ?, unit_of_measure = ?, updated_at = now(),
+                manufacturer_id = CASE WHEN CAST(? AS boolean)
+                    THEN COALESCE((SELECT id FROM ins_org), old.manufacturer_id) END
+            FROM old
+            WHERE p.id = old.id
+            RETURNING p.manufacturer_id
+        ), del_org AS (
+            DELETE FROM organizations o USING old
+            WHERE NOT CAST(? AS boolean) AND o.id = old.manufacturer_id AND o.creator_id = ?
+              AND NOT EXISTS (SELECT 1 FROM products p WHERE p.manufacturer_id = o.id AND p.id <> old.id)
+        )
+        SELECT manufacturer_id FROM upd
+    """;
+    // Организация удаляется вместе с продуктом, если на нее больше никто не ссылается
+    private static final String REMOVE_PRODUCT = """
+        WITH del AS (
+            DELETE FROM products WHERE id = ? RETURNING id, manufacturer_id
+        ), del_org AS (
+            DELETE FROM organizations o USING del
+            WHERE o.id = del.manufacturer_id
+              AND NOT EXISTS (SELECT 1 FROM products p WHERE p.manufacturer_id = o.id AND p.id <> del.id)
+        )
+        SELECT count(*) FROM del
     """;
     private static final String DELETE_PRODUCT = "DELETE FROM products WHERE id = ? AND creator_id = ?";
-    private static final String DELETE_USER_PRODUCTS = "DELETE FROM products WHERE creator_id = ?";
-    private static final String DELETE_ORGANIZATION = "DELETE FROM organizations WHERE id = ? AND creator_id = ?";
+    private static final String DELETE_USER_PRODUCTS = "DELETE FROM products WHERE creator_id = ? RETURNING id";
     private static final String SAVE_PRODUCT = """
         INSERT INTO products (id, name, coordinates_x, coordinates_y, creation_date, price, part_number, 
         manufacture_cost, unit_of_measure, manufacturer_id, creator_id)
@@ -89,7 +191,8 @@ public class DatabaseManager {
             part_number = EXCLUDED.part_number,
             manufacture_cost = EXCLUDED.manufacture_cost,
             unit_of_measure = EXCLUDED.unit_of_measure,
-            manufacturer_id = EXCLUDED.manufacturer_id
+            manufacturer_id = EXCLUDED.manufacturer_id,
+            updated_at = now()
     """;
     private static final String SAVE_ORGANIZATION = """
         INSERT INTO organizations (id, name, full_name, employees_count, creator_id)
@@ -99,6 +202,79 @@ public class DatabaseManager {
             full_name = EXCLUDED.full_name,
             employees_count = EXCLUDED.employees_count
     """;
+    // Массовое сохранение: COPY во временные таблицы и тот же upsert одним INSERT ... SELECT
+    private static final String CREATE_TMP_ORGANIZATIONS = """
+        CREATE TEMP TABLE tmp_organizations
+            (id BIGINT, name VARCHAR(100), full_name VARCHAR(150), employees_count BIGINT, creator_id INTEGER)
+            ON COMMIT DROP
+    """;
+    private static final String CREATE_TMP_PRODUCTS = """
+        CREATE TEMP TABLE tmp_products
+            (id BIGINT, name VARCHAR(100), coordinates_x BIGINT, coordinates_y REAL,
+             creation_date TIMESTAMP WITH TIME ZONE, price BIGINT, part_number VARCHAR(50),
+             manufacture_cost REAL, unit_of_measure VARCHAR(20), manufacturer_id BIGINT, creator_id INTEGER)
+            ON COMMIT DROP
+    """;
+    private static final String COPY_TMP_ORGANIZATIONS =
+            "COPY tmp_organizations (id, name, full_name, employees_count, creator_id) FROM STDIN (FORMAT csv)";
+    private static final String COPY_TMP_PRODUCTS = """
+        COPY tmp_products (id, name, coordinates_x, coordinates_y, creation_date, price, part_number,
+        manufacture_cost, unit_of_measure, manufacturer_id, creator_id) FROM STDIN (FORMAT csv)
+    """;
+    private static final String MERGE_TMP_ORGANIZATIONS = """
+        INSERT INTO organizations (id, name, full_name, employees_count, creator_id)
+        SELECT id, name, full_name, employees_count, creator_id FROM tmp_organizations
+        ON CONFLICT (id) DO UPDATE SET
+            name = EXCLUDED.name,
+            full_name = EXCLUDED.full_name,
+            employees_count = EXCLUDED.employees_count
+    """;
+    private static final String MERGE_TMP_PRODUCTS = """
+        INSERT INTO products (id, name, coordinates_x, coordinates_y, creation_date, price, part_number,
+        manufacture_cost, unit_of_measure, manufacturer_id, creator_id)
+        SELECT id, name, coordinates_x, coordinates_y, creation_date, price, part_number,
+            manufacture_cost, unit_of_measure, manufacturer_id, creator_id
+        FROM tmp_products
+        ON CONFLICT (id) DO UPDATE SET
+            name = EXCLUDED.name,
+            coordinates_x = EXCLUDED.coordinates_x,
+            coordinates_y = EXCLUDED.coordinates_y,
+            creation_date = EXCLUDED.creation_date,
+            price = EXCLUDED.price,
+            part_number = EXCLUDED.part_number,
+            manufacture_cost = EXCLUDED.manufacture_cost,
+            unit_of_measure = EXCLUDED.unit_of_measure,
+            manufacturer_id = EXCLUDED.manufacturer_id,
+            updated_at = now()
+    """;
+    // Отложенная запись: продукты удаляются пачкой, организации - если на них больше не ссылаются
+    private static final String DELETE_PRODUCTS = "DELETE FROM products WHERE id = ANY(?)";
+    private static final String DELETE_UNUSED_ORGANIZATIONS = """
+        DELETE FROM organizations o WHERE o.id = ANY(?)
+          AND NOT EXISTS (SELECT 1 FROM products p WHERE p.manufacturer_id = o.id)
+    """;
+    // Блок значений последовательности за одно обращение
+    private static final String NEXT_PRODUCT_IDS =
+            "SELECT nextval(pg_get_serial_sequence('products', 'id')) FROM generate_series(1, ?)";
+    private static final String NEXT_ORGANIZATION_IDS =
+            "SELECT nextval(pg_get_serial_sequence('organizations', 'id')) FROM generate_series(1, ?)";
+    private static final int BATCH_SIZE = 1000;
+    // Строк за одно обращение к курсору при загрузке коллекции
+    private static final int FETCH_SIZE = Integer.getInteger("db.fetchSize", 5000);
+    private static final int PROGRESS_STEP = 100_000;
+    // Число диапазонов id, читаемых параллельно по своим соединениям (1 - один курсор)
+    private static final int LOAD_PARTITIONS = Integer.getInteger("db.loadPartitions", 1);
+    private static final int COPY_CHUNK_SIZE = 64 * 1024;
+    // Начиная с этого числа продуктов saveCollection использует COPY вместо пакетов
+    private static final int COPY_THRESHOLD = Integer.getInteger("db.copyThreshold", 5000);
+
+    // false, если столбец updated_at недоступен: тогда изменения со времени снимка не найти
+    private volatile boolean changeTracking;
+    // false, если триггер уведомлений не установлен: изменения других серверов не видны
+    private volatile boolean changeNotification;
+    // Пользователи по логину: вход и регистрация после перезапуска сервера не идут в БД каждый раз
+    private final UserCache userCache = new UserCache(Integer.getInteger("auth.cacheSize", 1024),
+            Integer.getInteger("auth.cacheTtlSec", 300), Integer.getInteger("auth.negativeCacheTtlSec", 5));
 
     public DatabaseManager() {
         initializeDatabase();
@@ -112,6 +288,22 @@ public class DatabaseManager {
             stmt.executeQuery(CHECK_DRIVER);
             System.out.println("JDBC драйвер работает корректно");
 
+            try {
+                stmt.execute(ADD_UPDATED_AT_COLUMN);
+                stmt.execute(CREATE_UPDATED_AT_INDEX);
+                changeTracking = true;
+            } catch (SQLException e) {
+                System.err.println("Не удалось добавить столбец updated_at, снимок коллекции не используется: "
+                        + e.getMessage());
+            }
+            try {
+                stmt.execute(CREATE_NOTIFY_FUNCTION);
+                stmt.execute(CREATE_NOTIFY_TRIGGER);
+                changeNotification = true;
+            } catch (SQLException e) {
+                System.err.println("Не удалось установить триггер уведомлений об изменениях: " + e.getMessage());
+            }
+
         } catch (SQLException e) {
             System.err.println("Ошибка инициализации базы данных: " + e.getMessage());
             e.printStackTrace();
@@ -134,6 +326,8 @@ public class DatabaseManager {
     }
 
     public User registerUser(String username, String passwordHash) throws SQLException {
+        // Запомненное отсутствие логина больше не верно, даже если вставка не удастся
+        userCache.invalidate(username);
         try (Connection conn = DatabaseConnection.getConnection();
              PreparedStatement stmt = conn.prepareStatement(INSERT_USER)) {
 
@@ -143,23 +337,34 @@ public class DatabaseManager {
             ResultSet rs = stmt.executeQuery();
             if (rs.next()) {
                 int id = rs.getInt(1);
-                return new User(id, username, passwordHash);
+                User user = new User(id, username, passwordHash);
+                userCache.put(username, user);
+                return user;
             }
             throw new SQLException("Не удалось зарегистрировать пользователя");
         }
     }
     public String getUsernameById(int userId) throws SQLException {
-        String query = "SELECT username FROM users WHERE id = ?";
         try (Connection conn = DatabaseConnection.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(query)) {
+             PreparedStatement stmt = conn.prepareStatement(SELECT_USERNAME_BY_ID)) {
             stmt.setInt(1, userId);
             ResultSet rs = stmt.executeQuery();
             return rs.next() ? rs.getString("username") : "Unknown";
         }
     }
     public User getUserByUsername(String username) throws SQLException {
+        UserCache.Lookup cached = userCache.get(username);
+        if (cached.found) {
+            return cached.user;
+        }
+        User user = loadUserByUsername(username);
+        userCache.put(username, user);
+        return user;
+    }
+
+    private User loadUserByUsername(String username) throws SQLException {
         try (Connection conn = DatabaseConnection.getConnection();
-             PreparedStatement stmt = conn.prepareStatement("SELECT * FROM users WHERE username = ?")) {
+             PreparedStatement stmt = conn.prepareStatement(SELECT_USER_BY_USERNAME)) {
 
             stmt.setString(1, username);
             ResultSet rs = stmt.executeQuery();
@@ -173,276 +378,487 @@ public class DatabaseManager {
         }
     }
     public User authenticateUser(String username, String passwordHash) throws SQLException {
-        try (Connection conn = DatabaseConnection.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(SELECT_USER_BY_USERNAME)) {
+        User user = getUserByUsername(username);
+        return user != null && HashUtil.hashEquals(user.getPasswordHash(), passwordHash) ? user : null;
+    }
 
-            stmt.setString(1, username);
-            ResultSet rs = stmt.executeQuery();
+    public List<Product> loadProducts() throws SQLException {
+        List<Product> products = new ArrayList<>();
+        loadProducts(products::add);
+        return products;
+    }
 
-            if (rs.next()) {
-                int id = rs.getInt("id");
-                String storedHash = rs.getString("password_hash");
+    // Потоковая загрузка: строки читаются курсором порциями по FETCH_SIZE и сразу передаются
+    // в consumer, так что весь результат запроса не держится в памяти одновременно.
+    // consumer всегда вызывается в потоке, вызвавшем метод
+    public void loadProducts(Consumer<Product> consumer) throws SQLException {
+        long start = System.nanoTime();
+        long[] count = new long[1];
+        Consumer<Product> counting = product -> {
+            consumer.accept(product);
+            if (++count[0] % PROGRESS_STEP == 0) {
+                printLoadProgress(count[0], start);
+            }
+        };
 
-                if (storedHash.equals(passwordHash)) {
-                    return new User(id, username, storedHash);
-                }
+        // Одно соединение остается свободным для остальных запросов
+        int partitions = Math.max(1, Math.min(LOAD_PARTITIONS, DatabaseConnection.getMaximumPoolSize() - 1));
+        if (partitions > 1) {
+            loadPartitioned(partitions, counting);
+        } else {
+            try (Connection conn = DatabaseConnection.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(SELECT_ALL_PRODUCTS,
+                         ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                streamProducts(conn, stmt, counting);
             }
-            return null;
         }
+        printLoadProgress(count[0], start);
     }
 
-    public List<Product> loadProducts() throws SQLException {
-        List<Product> products = new ArrayList<>();
+    // Продукты, измененные после since или с id больше maxId (добавленные после снимка)
+    public void loadProductsChangedSince(Instant since, long maxId, Consumer<Product> consumer) throws SQLException {
         try (Connection conn = DatabaseConnection.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(SELECT_ALL_PRODUCTS);
-             ResultSet rs = stmt.executeQuery()) {
+             PreparedStatement stmt = conn.prepareStatement(SELECT_PRODUCTS_CHANGED_SINCE,
+                     ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            stmt.setTimestamp(1, Timestamp.from(since));
+            stmt.setLong(2, maxId);
+            streamProducts(conn, stmt, consumer);
+        }
+    }
 
-            while (rs.next()) {
-                products.add(mapProduct(rs));
+    // Все id продуктов по возрастанию: по ним находятся удаленные после снимка продукты
+    public long[] loadProductIds() throws SQLException {
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                long[] ids = readProductIds(conn);
+                conn.commit();
+                return ids;
+            } finally {
+                conn.setAutoCommit(true);
             }
         }
-        return products;
     }
 
-    private Product mapProduct(ResultSet rs) throws SQLException {
-        return new Product(
-                rs.getLong("id"),
-                rs.getString("name"),
-                new Coordinates(rs.getLong("coordinates_x"), rs.getFloat("coordinates_y")),
-                rs.getTimestamp("creation_date").toInstant().atZone(ZoneId.systemDefault()),
-                rs.getObject("price", Long.class),
-                rs.getString("part_number"),
-                rs.getObject("manufacture_cost", Float.class),
-                UnitOfMeasure.valueOf(rs.getString("unit_of_measure")),
-                rs.getObject("manufacturer_id") != null ? mapOrganization(rs) : null,
-                rs.getInt("creator_id")
-        );
+    private long[] readProductIds(Connection conn) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(SELECT_PRODUCT_IDS,
+                ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            stmt.setFetchSize(FETCH_SIZE);
+            long[] ids = new long[1024];
+            int count = 0;
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    if (count == ids.length) {
+                        ids = Arrays.copyOf(ids, count * 2);
+                    }
+                    ids[count++] = rs.getLong(1);
+                }
+            }
+            return Arrays.copyOf(ids, count);
+        }
     }
 
-    private Organization mapOrganization(ResultSet rs) throws SQLException {
-        return new Organization(
-                rs.getLong("org_id"),
-                rs.getString("org_name"),
-                rs.getString("org_full_name"),
-                rs.getLong("org_employees"),
-                rs.getInt("org_creator_id")
-        );
+    // Состояние таблицы для сверки, прочитанное из одного снимка БД: время, строки и id
+    // читаются в одной транзакции REPEATABLE READ. Строки, измененные после since (все,
+    // если since == null), передаются в consumer; now() первым запросом - время снимка
+    public SyncPoint loadSyncPoint(Instant since, Consumer<Product> consumer) throws SQLException {
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            int isolation = conn.getTransactionIsolation();
+            conn.setAutoCommit(false);
+            conn.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+            try {
+                Instant time;
+                try (PreparedStatement stmt = conn.prepareStatement(SELECT_DATABASE_TIME);
+                     ResultSet rs = stmt.executeQuery()) {
+                    rs.next();
+                    time = rs.getTimestamp(1).toInstant();
+                }
+                try (PreparedStatement stmt = conn.prepareStatement(
+                        since != null ? SELECT_PRODUCTS_CHANGED_SINCE : SELECT_ALL_PRODUCTS,
+                        ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                    if (since != null) {
+                        stmt.setTimestamp(1, Timestamp.from(since));
+                        stmt.setLong(2, Long.MAX_VALUE);
+                    }
+                    stmt.setFetchSize(FETCH_SIZE);
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            consumer.accept(mapProduct(rs));
+                        }
+                    }
+                }
+                long[] ids = readProductIds(conn);
+                conn.commit();
+                return new SyncPoint(time, ids);
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+                conn.setTransactionIsolation(isolation);
+            }
+        }
     }
 
-    public Long addProduct(Product product, int creatorId) throws SQLException {
-        Connection conn = null;
-        try {
-            conn = DatabaseConnection.getConnection();
-            conn.setAutoCommit(false);
+    // Время по часам БД: изменения сравниваются с updated_at, который ставит сама БД
+    public Instant getDatabaseTime() throws SQLException {
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(SELECT_DATABASE_TIME);
+             ResultSet rs = stmt.executeQuery()) {
+            rs.next();
+            return rs.getTimestamp(1).toInstant();
+        }
+    }
 
-            Long manufacturerId = null;
-            if (product.getManufacturer() != null) {
-                manufacturerId = insertOrganization(conn, product.getManufacturer(), creatorId);
-            }
+    public UserCache getUserCache() {
+        return userCache;
+    }
 
-            try (PreparedStatement stmt = conn.prepareStatement(INSERT_PRODUCT, Statement.RETURN_GENERATED_KEYS)) {
-                bindProductParameters(stmt, product, manufacturerId, creatorId);
+    public boolean isChangeTrackingAvailable() {
+        return changeTracking;
+    }
 
-                int affectedRows = stmt.executeUpdate();
-                if (affectedRows == 0) {
-                    throw new SQLException("Не удалось добавить продукт");
-                }
+    public boolean isChangeNotificationAvailable() {
+        return changeNotification;
+    }
 
-                try (ResultSet generatedKeys = stmt.getGeneratedKeys()) {
-                    if (generatedKeys.next()) {
-                        Long id = generatedKeys.getLong(1);
-                        conn.commit();
-                        return id;
-                    } else {
-                        throw new SQLException("Не удалось получить ID продукта");
-                    }
+    // Актуальные строки продуктов по id; удаленных продуктов в результате нет
+    public Map<Long, Product> getProductsByIds(Collection<Long> ids) throws SQLException {
+        Map<Long, Product> products = new HashMap<>();
+        if (ids.isEmpty()) {
+            return products;
+        }
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(SELECT_PRODUCTS_BY_IDS)) {
+            stmt.setArray(1, conn.createArrayOf("bigint", ids.toArray()));
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    Product product = mapProduct(rs);
+                    products.put(product.getId(), product);
                 }
             }
-        } catch (SQLException e) {
-            if (conn != null) {
-                try {
-                    conn.rollback();
-                } catch (SQLException ex) {
-                    System.err.println("Ошибка при откате транзакции: " + ex.getMessage());
+        }
+        return products;
+    }
+
+    private void streamProducts(Connection conn, PreparedStatement stmt, Consumer<Product> consumer) throws SQLException {
+        // Курсор на стороне сервера PostgreSQL работает только внутри транзакции
+        conn.setAutoCommit(false);
+        try {
+            stmt.setFetchSize(FETCH_SIZE);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    consumer.accept(mapProduct(rs));
                 }
             }
-            throw e;
+            conn.commit();
         } finally {
-            if (conn != null) {
-                try {
-                    conn.setAutoCommit(true);
-                    conn.close();
-                } catch (SQLException e) {
-                    System.err.println("Ошибка при закрытии соединения: " + e.getMessage());
-                }
-            }
+            conn.setAutoCommit(true);
         }
     }
 
-    private Long insertOrganization(Connection conn, Organization org, int creatorId) throws SQLException {
-        try (PreparedStatement stmt = conn.prepareStatement(INSERT_ORGANIZATION, Statement.RETURN_GENERATED_KEYS)) {
-            stmt.setString(1, org.getName());
-            stmt.setString(2, org.getFullName());
-            stmt.setLong(3, org.getEmployeesCount());
-            stmt.setInt(4, creatorId);
+    // Таблица делится на диапазоны id с равным числом строк, каждый читается своим потоком
+    // по своему соединению. Потоки отдают строки пачками через ограниченную очередь, а индексы
+    // строит вызывающий поток, так что разбор строк идет параллельно с построением индексов
+    private void loadPartitioned(int partitions, Consumer<Product> consumer) throws SQLException {
+        Double[] fractions = new Double[partitions - 1];
+        for (int i = 1; i < partitions; i++) {
+            fractions[i - 1] = (double) i / partitions;
+        }
+        long[] bounds = new long[partitions + 1];
+        bounds[0] = Long.MIN_VALUE;
+        bounds[partitions] = Long.MAX_VALUE;
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(SELECT_PRODUCT_ID_BOUNDS)) {
+            stmt.setArray(1, conn.createArrayOf("float8", fractions));
+            try (ResultSet rs = stmt.executeQuery()) {
+                Array quantiles = rs.next() ? rs.getArray(1) : null;
+                if (quantiles == null) {
+                    return;
+                }
+                Long[] ids = (Long[]) quantiles.getArray();
+                for (int i = 0; i < ids.length; i++) {
+                    bounds[i + 1] = ids[i];
+                }
+            }
+        }
+        System.out.println("Параллельная загрузка: " + partitions + " диапазонов id");
 
-            int affectedRows = stmt.executeUpdate();
-            if (affectedRows == 0) {
-                throw new SQLException("Не удалось добавить организацию");
+        List<Product> end = new ArrayList<>();
+        BlockingQueue<List<Product>> batches = new ArrayBlockingQueue<>(partitions * 4);
+        // Первая ошибка любого загрузчика: без нее целый диапазон id молча пропал бы из коллекции
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        ExecutorService loaders = Executors.newFixedThreadPool(partitions, task -> {
+            Thread thread = new Thread(task, "product-loader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            for (int i = 0; i < partitions; i++) {
+                long from = bounds[i];
+                long to = bounds[i + 1];
+                loaders.execute(() -> {
+                    try {
+                        loadRange(from, to, batches);
+                    } catch (InterruptedException e) {
+                        failure.compareAndSet(null, e);
+                        Thread.currentThread().interrupt();
+                    } catch (Throwable e) {
+                        // В том числе ошибки разбора строки в mapProduct
+                        failure.compareAndSet(null, e);
+                    } finally {
+                        try {
+                            batches.put(end);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                });
             }
 
-            try (ResultSet generatedKeys = stmt.getGeneratedKeys()) {
-                if (generatedKeys.next()) {
-                    return generatedKeys.getLong(1);
+            int finished = 0;
+            while (finished < partitions) {
+                List<Product> batch = batches.take();
+                if (batch == end) {
+                    finished++;
                 } else {
-                    throw new SQLException("Не удалось получить ID организации");
+                    batch.forEach(consumer);
                 }
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Загрузка продуктов прервана", e);
+        } finally {
+            loaders.shutdownNow();
+        }
+        Throwable error = failure.get();
+        if (error instanceof SQLException) {
+            throw (SQLException) error;
+        } else if (error instanceof RuntimeException) {
+            throw (RuntimeException) error;
+        } else if (error instanceof Error) {
+            throw (Error) error;
+        } else if (error != null) {
+            throw new SQLException("Загрузка диапазона продуктов не завершена", error);
         }
     }
 
-    private void bindProductParameters(PreparedStatement stmt, Product product,
-                                       Long manufacturerId, int creatorId) throws SQLException {
-        stmt.setString(1, product.getName());
-        stmt.setLong(2, product.getCoordinates().getX());
-        stmt.setFloat(3, product.getCoordinates().getY());
-        stmt.setObject(4, product.getPrice());
-        stmt.setString(5, product.getPartNumber());
-        stmt.setObject(6, product.getManufactureCost());
-        stmt.setString(7, product.getUnitOfMeasure().name());
-        stmt.setObject(8, manufacturerId);
-        stmt.setInt(9, creatorId);
-    }
-
-    public boolean updateProduct(Long id, Product newProduct, int creatorId) throws SQLException {
-        Connection conn = null;
-        try {
-            conn = DatabaseConnection.getConnection();
+    // Диапазон (from, to]
+    private void loadRange(long from, long to, BlockingQueue<List<Product>> batches)
+            throws SQLException, InterruptedException {
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(SELECT_PRODUCTS_IN_RANGE,
+                     ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            stmt.setLong(1, from);
+            stmt.setLong(2, to);
+            stmt.setFetchSize(FETCH_SIZE);
             conn.setAutoCommit(false);
-
-            // Получаем старый продукт для получения manufacturer_id
-            Product oldProduct = getProductById(conn, id, creatorId);
-            if (oldProduct == null) return false;
-
-            Long oldManufacturerId = oldProduct.getManufacturer() != null ? oldProduct.getManufacturer().getId() : null;
-            Long newManufacturerId = null;
-
-            if (newProduct.getManufacturer() != null) {
-                if (oldManufacturerId != null) {
-                    // Обновляем существующую организацию
-                    updateOrganization(conn, oldManufacturerId, newProduct.getManufacturer(), creatorId);
-                    newManufacturerId = oldManufacturerId;
-                } else {
-                    // Создаем новую организацию
-                    newManufacturerId = insertOrganization(conn, newProduct.getManufacturer(), creatorId);
+            try {
+                List<Product> batch = new ArrayList<>(BATCH_SIZE);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        batch.add(mapProduct(rs));
+                        if (batch.size() == BATCH_SIZE) {
+                            batches.put(batch);
+                            batch = new ArrayList<>(BATCH_SIZE);
+                        }
+                    }
                 }
-            } else if (oldManufacturerId != null) {
-                // Удаляем старую организацию, если она была
-                deleteOrganization(conn, oldManufacturerId, creatorId);
-            }
-
-            try (PreparedStatement stmt = conn.prepareStatement(UPDATE_PRODUCT)) {
-                stmt.setString(1, newProduct.getName());
-                stmt.setLong(2, newProduct.getCoordinates().getX());
-                stmt.setFloat(3, newProduct.getCoordinates().getY());
-                stmt.setObject(4, newProduct.getPrice());
-                stmt.setString(5, newProduct.getPartNumber());
-                stmt.setObject(6, newProduct.getManufactureCost());
-                stmt.setString(7, newProduct.getUnitOfMeasure().name());
-                stmt.setObject(8, newManufacturerId);
-                stmt.setLong(9, id);
-                stmt.setInt(10, creatorId);
-
-                int affectedRows = stmt.executeUpdate();
                 conn.commit();
-                return affectedRows > 0;
-            }
-        } catch (SQLException e) {
-            if (conn != null) {
-                try {
-                    conn.rollback();
-                } catch (SQLException ex) {
-                    System.err.println("Ошибка при откате транзакции: " + ex.getMessage());
+                if (!batch.isEmpty()) {
+                    batches.put(batch);
                 }
+            } finally {
+                conn.setAutoCommit(true);
             }
-            throw e;
-        } finally {
-            if (conn != null) {
-                try {
-                    conn.setAutoCommit(true);
-                    conn.close();
-                } catch (SQLException e) {
-                    System.err.println("Ошибка при закрытии соединения: " + e.getMessage());
+        }
+    }
+
+    private void printLoadProgress(long count, long start) {
+        long elapsedMs = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+        System.out.printf("Загружено продуктов: %d за %d мс (%d в секунду)%n",
+                count, elapsedMs, count * 1000 / elapsedMs);
+    }
+
+    private Product mapProduct(ResultSet rs) throws SQLException {
+        long manufacturerId = rs.getLong(10);
+        Organization manufacturer = rs.wasNull() ? null : new Organization(
+                manufacturerId,
+                rs.getString(12),
+                rs.getString(13),
+                rs.getLong(14),
+                rs.getInt(15)
+        );
+        Long price = rs.getLong(6);
+        if (rs.wasNull()) {
+            price = null;
+        }
+        Float manufactureCost = rs.getFloat(8);
+        if (rs.wasNull()) {
+            manufactureCost = null;
+        }
+        return new Product(
+                rs.getLong(1),
+                rs.getString(2),
+                new Coordinates(rs.getLong(3), rs.getFloat(4)),
+                rs.getTimestamp(5).toInstant().atZone(ZoneId.systemDefault()),
+                price,
+                rs.getString(7),
+                manufactureCost,
+                UnitOfMeasure.valueOf(rs.getString(9)),
+                manufacturer,
+                rs.getInt(11)
+        );
+    }
+
+    public Long addProduct(Product product, int creatorId) throws SQLException {
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(INSERT_PRODUCT)) {
+            int index = bindOrganizationParameters(stmt, 1, product.getManufacturer(), creatorId);
+            stmt.setBoolean(index++, product.getManufacturer() != null);
+            index = bindProductParameters(stmt, index, product);
+            stmt.setInt(index, creatorId);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    throw new SQLException("Не удалось добавить продукт");
                 }
+                setManufacturerId(product, rs.getObject(2, Long.class));
+                return rs.getLong(1);
             }
         }
     }
 
-    private Product getProductById(Connection conn, Long id, int creatorId) throws SQLException {
-        String query = SELECT_ALL_PRODUCTS + " WHERE p.id = ? AND p.creator_id = ?";
-        try (PreparedStatement stmt = conn.prepareStatement(query)) {
+    public boolean updateProduct(Long id, Product newProduct, int creatorId) throws SQLException {
+        Organization manufacturer = newProduct.getManufacturer();
+        boolean hasManufacturer = manufacturer != null;
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(UPDATE_PRODUCT)) {
             stmt.setLong(1, id);
             stmt.setInt(2, creatorId);
+            int index = bindOrganizationFields(stmt, 3, manufacturer);
+            stmt.setBoolean(index++, hasManufacturer);
+            stmt.setInt(index++, creatorId);
+            index = bindOrganizationParameters(stmt, index, manufacturer, creatorId);
+            stmt.setBoolean(index++, hasManufacturer);
+            index = bindProductParameters(stmt, index, newProduct);
+            stmt.setBoolean(index++, hasManufacturer);
+            stmt.setBoolean(index++, hasManufacturer);
+            stmt.setInt(index, creatorId);
 
-            ResultSet rs = stmt.executeQuery();
-            return rs.next() ? mapProduct(rs) : null;
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    return false;
+                }
+                setManufacturerId(newProduct, rs.getObject(1, Long.class));
+                return true;
+            }
         }
     }
 
-    private void updateOrganization(Connection conn, Long id, Organization org, int creatorId) throws SQLException {
-        String query = "UPDATE organizations SET name = ?, full_name = ?, employees_count = ? WHERE id = ? AND creator_id = ?";
-        try (PreparedStatement stmt = conn.prepareStatement(query)) {
-            stmt.setString(1, org.getName());
-            stmt.setString(2, org.getFullName());
-            stmt.setLong(3, org.getEmployeesCount());
-            stmt.setLong(4, id);
-            stmt.setInt(5, creatorId);
-            stmt.executeUpdate();
+    // Параметры name, full_name, employees_count, creator_id организации (null, если ее нет)
+    private int bindOrganizationParameters(PreparedStatement stmt, int index, Organization org,
+                                           int creatorId) throws SQLException {
+        index = bindOrganizationFields(stmt, index, org);
+        stmt.setInt(index++, creatorId);
+        return index;
+    }
+
+    private int bindOrganizationFields(PreparedStatement stmt, int index, Organization org) throws SQLException {
+        stmt.setString(index++, org != null ? org.getName() : null);
+        stmt.setString(index++, org != null ? org.getFullName() : null);
+        stmt.setObject(index++, org != null ? org.getEmployeesCount() : null, Types.BIGINT);
+        return index;
+    }
+
+    private int bindProductParameters(PreparedStatement stmt, int index, Product product) throws SQLException {
+        stmt.setString(index++, product.getName());
+        stmt.setLong(index++, product.getCoordinates().getX());
+        stmt.setFloat(index++, product.getCoordinates().getY());
+        stmt.setObject(index++, product.getPrice(), Types.BIGINT);
+        stmt.setString(index++, product.getPartNumber());
+        stmt.setObject(index++, product.getManufactureCost(), Types.REAL);
+        stmt.setString(index++, product.getUnitOfMeasure().name());
+        return index;
+    }
+
+    private void setManufacturerId(Product product, Long manufacturerId) {
+        if (product.getManufacturer() != null && manufacturerId != null) {
+            product.getManufacturer().setId(manufacturerId);
         }
     }
 
-    private void deleteOrganization(Connection conn, Long id, int creatorId) throws SQLException {
-        try (PreparedStatement stmt = conn.prepareStatement(DELETE_ORGANIZATION)) {
+    public boolean removeProduct(Long id) throws SQLException {
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(REMOVE_PRODUCT)) {
             stmt.setLong(1, id);
-            stmt.setInt(2, creatorId);
-            stmt.executeUpdate();
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() && rs.getInt(1) > 0;
+            }
         }
     }
 
-    public boolean removeProduct(Long id) throws SQLException {
-        Connection conn = null;
-        try {
-            conn = DatabaseConnection.getConnection();
-            conn.setAutoCommit(false);
+    // Актуальная строка продукта; null, если продукт удален
+    public Product getProductById(Long id) throws SQLException {
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            return getProductById(conn, id);
+        }
+    }
 
-            // Сначала получаем продукт, чтобы получить информацию о производителе
-            Product product = getProductById(conn, id);
-            if (product == null) {
-                conn.rollback();
-                return false;
-            }
+    private Product getProductById(Connection conn, Long id) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(SELECT_PRODUCT_BY_ID)) {
+            stmt.setLong(1, id);
+            ResultSet rs = stmt.executeQuery();
+            return rs.next() ? mapProduct(rs) : null;
+        }
+    }
 
-            // Удаляем продукт
-            try (PreparedStatement stmt = conn.prepareStatement("DELETE FROM products WHERE id = ?")) {
-                stmt.setLong(1, id);
-                int affectedRows = stmt.executeUpdate();
+    // Возвращает id удаленных продуктов
+    public List<Long> clearUserProducts(int userId) throws SQLException {
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(DELETE_USER_PRODUCTS)) {
 
-                if (affectedRows == 0) {
-                    conn.rollback();
-                    return false;
+            stmt.setInt(1, userId);
+            List<Long> removedIds = new ArrayList<>();
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    removedIds.add(rs.getLong(1));
                 }
             }
+            return removedIds;
+        }
+    }
 
-            // Если у продукта был производитель, проверяем, не используется ли он другими продуктами
-            if (product.getManufacturer() != null) {
-                if (!isOrganizationUsedByOtherProducts(conn, product.getManufacturer().getId(), id)) {
-                    deleteOrganization(conn, product.getManufacturer().getId());
+    // Сохраняет продукты пользователя одной транзакцией с семантикой upsert по id.
+    // Небольшие наборы отправляются пакетами (драйвер с reWriteBatchedInserts склеивает их
+    // в многострочные INSERT), большие - через COPY во временные таблицы
+    public void saveCollection(List<Product> products, int userId) throws SQLException {
+        // Повторяющиеся id схлопываются: побеждает последняя версия, как при построчной записи,
+        // а многострочный ON CONFLICT не может изменить одну строку дважды
+        Map<Long, Organization> organizations = new LinkedHashMap<>();
+        Map<Long, Product> userProducts = new LinkedHashMap<>();
+        for (Product product : products) {
+            if (product.getCreatorId() == userId) {
+                if (product.getManufacturer() != null) {
+                    organizations.put(product.getManufacturer().getId(), product.getManufacturer());
                 }
+                userProducts.put(product.getId(), product);
+            }
+        }
+
+        Connection conn = null;
+        try {
+            conn = DatabaseConnection.getConnection();
+            conn.setAutoCommit(false);
+
+            if (userProducts.size() >= COPY_THRESHOLD) {
+                copyCollection(conn, organizations.values(), userProducts.values(), userId);
+            } else {
+                batchCollection(conn, organizations.values(), userProducts.values(), userId);
             }
 
             conn.commit();
-            return true;
-        } catch (SQLException e) {
+        } catch (SQLException | RuntimeException e) {
             if (conn != null) {
                 try {
                     conn.rollback();
@@ -463,58 +879,51 @@ public class DatabaseManager {
         }
     }
 
-    private boolean isOrganizationUsedByOtherProducts(Connection conn, Long organizationId, Long excludingProductId) throws SQLException {
-        String query = "SELECT COUNT(*) FROM products WHERE manufacturer_id = ? AND id != ?";
-        try (PreparedStatement stmt = conn.prepareStatement(query)) {
-            stmt.setLong(1, organizationId);
-            stmt.setLong(2, excludingProductId);
-            ResultSet rs = stmt.executeQuery();
-            return rs.next() && rs.getInt(1) > 0;
-        }
-    }
-
-    private void deleteOrganization(Connection conn, Long id) throws SQLException {
-        try (PreparedStatement stmt = conn.prepareStatement("DELETE FROM organizations WHERE id = ?")) {
-            stmt.setLong(1, id);
-            stmt.executeUpdate();
-        }
-    }
-    private Product getProductById(Connection conn, Long id) throws SQLException {
-        String query = SELECT_ALL_PRODUCTS + " WHERE p.id = ?";
-        try (PreparedStatement stmt = conn.prepareStatement(query)) {
-            stmt.setLong(1, id);
-            ResultSet rs = stmt.executeQuery();
-            return rs.next() ? mapProduct(rs) : null;
-        }
-    }
-
-    public boolean clearUserProducts(int userId) throws SQLException {
-        try (Connection conn = DatabaseConnection.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(DELETE_USER_PRODUCTS)) {
-
-            stmt.setInt(1, userId);
-            int affectedRows = stmt.executeUpdate();
-            return affectedRows > 0;
+    // Применяет накопленные изменения одной транзакцией: upserts - итоговые версии продуктов,
+    // removedIds - удаленные продукты, releasedOrganizationIds - организации, которые могли
+    // остаться без продуктов. Каждый id встречается не более одного раза
+    public void applyChanges(Collection<Product> upserts, Collection<Long> removedIds,
+                             Collection<Long> releasedOrganizationIds) throws SQLException {
+        Map<Long, Organization> organizations = new LinkedHashMap<>();
+        for (Product product : upserts) {
+            if (product.getManufacturer() != null) {
+                organizations.put(product.getManufacturer().getId(), product.getManufacturer());
+            }
         }
-    }
 
-    public void saveCollection(List<Product> products, int userId) throws SQLException {
         Connection conn = null;
         try {
             conn = DatabaseConnection.getConnection();
             conn.setAutoCommit(false);
 
-            // Сохраняем организации сначала
-            for (Product product : products) {
-                if (product.getManufacturer() != null && product.getCreatorId() == userId) {
-                    saveOrganization(conn, product.getManufacturer(), userId);
+            try (PreparedStatement stmt = conn.prepareStatement(SAVE_ORGANIZATION)) {
+                for (Organization org : organizations.values()) {
+                    bindSavedOrganization(stmt, org, org.getCreatorId());
+                    stmt.addBatch();
+                }
+                if (!organizations.isEmpty()) {
+                    stmt.executeBatch();
                 }
             }
-
-            // Сохраняем продукты
-            for (Product product : products) {
-                if (product.getCreatorId() == userId) {
-                    saveProduct(conn, product, userId);
+            try (PreparedStatement stmt = conn.prepareStatement(SAVE_PRODUCT)) {
+                for (Product product : upserts) {
+                    bindSavedProduct(stmt, product, product.getCreatorId());
+                    stmt.addBatch();
+                }
+                if (!upserts.isEmpty()) {
+                    stmt.executeBatch();
+                }
+            }
+            if (!removedIds.isEmpty()) {
+                try (PreparedStatement stmt = conn.prepareStatement(DELETE_PRODUCTS)) {
+                    stmt.setArray(1, conn.createArrayOf("bigint", removedIds.toArray()));
+                    stmt.executeUpdate();
+                }
+            }
+            if (!releasedOrganizationIds.isEmpty()) {
+                try (PreparedStatement stmt = conn.prepareStatement(DELETE_UNUSED_ORGANIZATIONS)) {
+                    stmt.setArray(1, conn.createArrayOf("bigint", releasedOrganizationIds.toArray()));
+                    stmt.executeUpdate();
                 }
             }
 
@@ -540,33 +949,202 @@ public class DatabaseManager {
         }
     }
 
-    private void saveOrganization(Connection conn, Organization org, int userId) throws SQLException {
+    // Резервирует count id продуктов (или организаций) заранее, чтобы продукт получил id
+    // до записи в БД; неиспользованные значения просто остаются пропусками в последовательности
+    public long[] allocateProductIds(int count) throws SQLException {
+        return allocateIds(NEXT_PRODUCT_IDS, count);
+    }
+
+    public long[] allocateOrganizationIds(int count) throws SQLException {
+        return allocateIds(NEXT_ORGANIZATION_IDS, count);
+    }
+
+    private long[] allocateIds(String query, int count) throws SQLException {
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(query)) {
+            stmt.setInt(1, count);
+            long[] ids = new long[count];
+            int index = 0;
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next() && index < count) {
+                    ids[index++] = rs.getLong(1);
+                }
+            }
+            if (index < count) {
+                throw new SQLException("Последовательность вернула " + index + " значений из " + count);
+            }
+            return ids;
+        }
+    }
+
+    private void batchCollection(Connection conn, Collection<Organization> organizations,
+                                 Collection<Product> products, int userId) throws SQLException {
+        // Сначала организации, на которые ссылаются продукты
         try (PreparedStatement stmt = conn.prepareStatement(SAVE_ORGANIZATION)) {
-            stmt.setLong(1, org.getId());
-            stmt.setString(2, org.getName());
-            stmt.setString(3, org.getFullName());
-            stmt.setLong(4, org.getEmployeesCount());
-            stmt.setInt(5, userId);
-            stmt.executeUpdate();
+            int pending = 0;
+            for (Organization org : organizations) {
+                bindSavedOrganization(stmt, org, userId);
+                stmt.addBatch();
+                if (++pending == BATCH_SIZE) {
+                    stmt.executeBatch();
+                    pending = 0;
+                }
+            }
+            if (pending > 0) {
+                stmt.executeBatch();
+            }
+        }
+
+        try (PreparedStatement stmt = conn.prepareStatement(SAVE_PRODUCT)) {
+            int pending = 0;
+            for (Product product : products) {
+                bindSavedProduct(stmt, product, userId);
+                stmt.addBatch();
+                if (++pending == BATCH_SIZE) {
+                    stmt.executeBatch();
+                    pending = 0;
+                }
+            }
+            if (pending > 0) {
+                stmt.executeBatch();
+            }
         }
     }
 
-    private void saveProduct(Connection conn, Product product, int userId) throws SQLException {
+    private void copyCollection(Connection conn, Collection<Organization> organizations,
+                                Collection<Product> products, int userId) throws SQLException {
+        CopyManager copyManager = conn.unwrap(PGConnection.class).getCopyAPI();
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(CREATE_TMP_ORGANIZATIONS);
+            stmt.execute(CREATE_TMP_PRODUCTS);
+        }
+
+        // Ошибка посреди строк (в том числе NPE в геттере) закрывает COPY в close(),
+        // иначе соединение вернулось бы в пул в состоянии COPY IN
+        try (CsvCopy orgCopy = new CsvCopy(copyManager.copyIn(COPY_TMP_ORGANIZATIONS))) {
+            for (Organization org : organizations) {
+                orgCopy.field(org.getId()).field(org.getName()).field(org.getFullName())
+                        .field(org.getEmployeesCount()).field(userId).endRow();
+            }
+            orgCopy.finish();
+        }
+
+        try (CsvCopy productCopy = new CsvCopy(copyManager.copyIn(COPY_TMP_PRODUCTS))) {
+            for (Product product : products) {
+                productCopy.field(product.getId())
+                        .field(product.getName())
+                        .field(product.getCoordinates().getX())
+                        .field(product.getCoordinates().getY())
+                        .field(product.getCreationDate() != null ? product.getCreationDate().toOffsetDateTime() : null)
+                        .field(product.getPrice())
+                        .field(product.getPartNumber())
+                        .field(product.getManufactureCost())
+                        .field(product.getUnitOfMeasure().name())
+                        .field(product.getManufacturer() != null ? product.getManufacturer().getId() : null)
+                        .field(userId)
+                        .endRow();
+            }
+            productCopy.finish();
+        }
+
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate(MERGE_TMP_ORGANIZATIONS);
+            stmt.executeUpdate(MERGE_TMP_PRODUCTS);
+        }
+    }
+
+    // Время снимка БД и все id продуктов в нем по возрастанию
+    public static final class SyncPoint {
+        private final Instant time;
+        private final long[] ids;
+
+        private SyncPoint(Instant time, long[] ids) {
+            this.time = time;
+            this.ids = ids;
+        }
+
+        public Instant getTime() {
+            return time;
+        }
+
+        public boolean contains(long id) {
+            return Arrays.binarySearch(ids, id) >= 0;
+        }
+    }
+
+    // Построчная запись в COPY ... (FORMAT csv) кусками по COPY_CHUNK_SIZE символов.
+    // Непустые значения всегда в кавычках, чтобы пустая строка отличалась от NULL.
+    // COPY, не завершенный через finish(), отменяется при закрытии
+    private static final class CsvCopy implements AutoCloseable {
+        private final CopyIn copyIn;
+        private final StringBuilder buffer = new StringBuilder(COPY_CHUNK_SIZE + 1024);
+        private boolean firstField = true;
+
+        CsvCopy(CopyIn copyIn) {
+            this.copyIn = copyIn;
+        }
+
+        CsvCopy field(Object value) {
+            if (!firstField) {
+                buffer.append(',');
+            }
+            firstField = false;
+            if (value != null) {
+                buffer.append('"').append(value.toString().replace("\"", "\"\"")).append('"');
+            }
+            return this;
+        }
+
+        void endRow() throws SQLException {
+            buffer.append('\n');
+            firstField = true;
+            if (buffer.length() >= COPY_CHUNK_SIZE) {
+                flush();
+            }
+        }
+
+        void finish() throws SQLException {
+            flush();
+            copyIn.endCopy();
+        }
+
+        @Override
+        public void close() throws SQLException {
+            if (copyIn.isActive()) {
+                copyIn.cancelCopy();
+            }
+        }
+
+        private void flush() throws SQLException {
+            if (buffer.length() > 0) {
+                byte[] bytes = buffer.toString().getBytes(StandardCharsets.UTF_8);
+                copyIn.writeToCopy(bytes, 0, bytes.length);
+                buffer.setLength(0);
+            }
+        }
+    }
+
+    private void bindSavedOrganization(PreparedStatement stmt, Organization org, int userId) throws SQLException {
+        stmt.setLong(1, org.getId());
+        stmt.setString(2, org.getName());
+        stmt.setString(3, org.getFullName());
+        stmt.setLong(4, org.getEmployeesCount());
+        stmt.setInt(5, userId);
+    }
+
+    private void bindSavedProduct(PreparedStatement stmt, Product product, int userId) throws SQLException {
         Long manufacturerId = product.getManufacturer() != null ? product.getManufacturer().getId() : null;
 
-        try (PreparedStatement stmt = conn.prepareStatement(SAVE_PRODUCT)) {
-            stmt.setLong(1, product.getId());
-            stmt.setString(2, product.getName());
-            stmt.setLong(3, product.getCoordinates().getX());
-            stmt.setFloat(4, product.getCoordinates().getY());
-            stmt.setTimestamp(5, Timestamp.from(product.getCreationDate().toInstant()));
-            stmt.setObject(6, product.getPrice());
-            stmt.setString(7, product.getPartNumber());
-            stmt.setObject(8, product.getManufactureCost());
-            stmt.setString(9, product.getUnitOfMeasure().name());
-            stmt.setObject(10, manufacturerId);
-            stmt.setInt(11, userId);
-            stmt.executeUpdate();
-        }
-    }
-}
\ No newline at end of file
+        stmt.setLong(1, product.getId());
+        stmt.setString(2, product.getName());
+        stmt.setLong(3, product.getCoordinates().getX());
+        stmt.setFloat(4, product.getCoordinates().getY());
+        stmt.setTimestamp(5, Timestamp.from(product.getCreationDate().toInstant()));
+        stmt.setObject(6, product.getPrice(), Types.BIGINT);
+        stmt.setString(7, product.getPartNumber());
+        stmt.setObject(8, product.getManufactureCost(), Types.REAL);
+        stmt.setString(9, product.getUnitOfMeasure().name());
+        stmt.setObject(10, manufacturerId, Types.BIGINT);
+        stmt.setInt(11, userId);
+    }
+}
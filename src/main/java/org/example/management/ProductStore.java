@@ -0,0 +1,93 @@
+package org.example.management;
+
+import org.example.data.Product;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+// Хранилище продуктов с двумя индексами: хэш по id (поиск за O(1)) и упорядоченный
+// по manufactureCost (вставка и удаление за O(log n), голова коллекции - первый элемент).
+// Изменения синхронизирует CollectionManager; поиск по id можно вызывать без блокировки.
+public class ProductStore {
+    // Естественный порядок продуктов; id различает продукты с одинаковой стоимостью
+    public static final Comparator<Product> ORDER =
+            Comparator.<Product>naturalOrder().thenComparing(Product::getId);
+
+    private final Map<Long, Product> byId = new ConcurrentHashMap<>();
+    private final TreeSet<Product> ordered = new TreeSet<>(ORDER);
+
+    // Добавляет продукт или заменяет продукт с тем же id; возвращает замененный
+    public Product put(Product product) {
+        Product previous = byId.put(product.getId(), product);
+        if (previous != null) {
+            ordered.remove(previous);
+        }
+        ordered.add(product);
+        return previous;
+    }
+
+    public Product get(Long id) {
+        return byId.get(id);
+    }
+
+    public Product remove(Long id) {
+        Product removed = byId.remove(id);
+        if (removed != null) {
+            ordered.remove(removed);
+        }
+        return removed;
+    }
+
+    public Product first() {
+        return ordered.isEmpty() ? null : ordered.first();
+    }
+
+    public Product pollFirst() {
+        Product first = ordered.pollFirst();
+        if (first != null) {
+            byId.remove(first.getId());
+        }
+        return first;
+    }
+
+    // Удаляет подходящие продукты и возвращает их
+    public List<Product> removeIf(Predicate<Product> filter) {
+        List<Product> removed = new ArrayList<>();
+        Iterator<Product> it = ordered.iterator();
+        while (it.hasNext()) {
+            Product product = it.next();
+            if (filter.test(product)) {
+                it.remove();
+                byId.remove(product.getId());
+                removed.add(product);
+            }
+        }
+        return removed;
+    }
+
+    public void clear() {
+        byId.clear();
+        ordered.clear();
+    }
+
+    public int size() {
+        return byId.size();
+    }
+
+    public boolean isEmpty() {
+        return byId.isEmpty();
+    }
+
+    // Продукты в порядке возрастания
+    public Collection<Product> values() {
+        return Collections.unmodifiableCollection(ordered);
+    }
+}
@@ -0,0 +1,147 @@
+package org.example.management;
+
+import org.example.data.Product;
+import org.example.network.ProductCodec;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+// Снимок коллекции на локальном диске для быстрого перезапуска.
+// Формат: MAGIC, FORMAT, версия коллекции, время синхронизации с БД (мс), максимальный id,
+// продукты в формате ProductCodec и CRC32 всего предыдущего содержимого.
+// Файл пишется во временный и атомарно переименовывается, читается через mmap.
+public final class SnapshotFile {
+    private static final int MAGIC = 0x4C534E50;
+    private static final int FORMAT = 1;
+    private static final int TRAILER_SIZE = Long.BYTES;
+
+    private final long version;
+    private final Instant syncedAt;
+    private final long maxId;
+    private final List<Product> products;
+
+    private SnapshotFile(long version, Instant syncedAt, long maxId, List<Product> products) {
+        this.version = version;
+        this.syncedAt = syncedAt;
+        this.maxId = maxId;
+        this.products = products;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    // Время БД, до которого все изменения гарантированно вошли в снимок
+    public Instant getSyncedAt() {
+        return syncedAt;
+    }
+
+    public long getMaxId() {
+        return maxId;
+    }
+
+    public List<Product> getProducts() {
+        return products;
+    }
+
+    public static void write(Path file, long version, Instant syncedAt, Collection<Product> products) throws IOException {
+        long maxId = 0;
+        for (Product product : products) {
+            maxId = Math.max(maxId, product.getId());
+        }
+
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        CRC32 crc = new CRC32();
+        try (OutputStream fileOut = Files.newOutputStream(tmp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new CheckedOutputStream(fileOut, crc), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT);
+            out.writeLong(version);
+            out.writeLong(syncedAt.toEpochMilli());
+            out.writeLong(maxId);
+            ProductCodec.writeProducts(out, products);
+            out.flush();
+            // Контрольная сумма сама в CRC не входит
+            new DataOutputStream(fileOut).writeLong(crc.getValue());
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // null, если файла нет; исключение, если он поврежден
+    public static SnapshotFile read(Path file) throws IOException {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < TRAILER_SIZE || size > Integer.MAX_VALUE) {
+                throw new StreamCorruptedException("Недопустимый размер снимка: " + size);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            int bodySize = (int) size - TRAILER_SIZE;
+
+            CRC32 crc = new CRC32();
+            crc.update(buffer.duplicate().limit(bodySize));
+            if (crc.getValue() != buffer.getLong(bodySize)) {
+                throw new StreamCorruptedException("Контрольная сумма снимка не совпадает");
+            }
+
+            DataInputStream in = new DataInputStream(new BufferInput(buffer.limit(bodySize)));
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT) {
+                throw new StreamCorruptedException("Неизвестный формат снимка");
+            }
+            long version = in.readLong();
+            Instant syncedAt = Instant.ofEpochMilli(in.readLong());
+            long maxId = in.readLong();
+            List<Product> products = ProductCodec.readProducts(in);
+            return new SnapshotFile(version, syncedAt, maxId, products);
+        }
+    }
+
+    // Чтение из отображенного в память файла без промежуточного копирования
+    private static final class BufferInput extends InputStream {
+        private final ByteBuffer buffer;
+
+        BufferInput(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+
+        // Точный остаток нужен для проверки размеров в ProductCodec
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package org.example.management;
+
+import com.jcraft.jsch.JSch;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.Session;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+// Несколько SSH-сессий до сервера БД, у каждой свой локальный порт. Соединения пула
+// распределяются по портам (несколько хостов в JDBC URL), поэтому один канал SSH не
+// ограничивает всю пропускную способность, а обрыв одной сессии не останавливает запросы:
+// драйвер переходит на следующий порт, пока монитор восстанавливает сессию
+public class SshTunnelSupervisor {
+    private static final long MIN_RETRY_DELAY_MS = 1000;
+    private static final long MAX_RETRY_DELAY_MS = 30_000;
+    private static final int CONNECT_TIMEOUT_MS = 30_000;
+
+    private final String user;
+    private final String password;
+    private final String host;
+    private final int port;
+    private final String remoteHost;
+    private final int remotePort;
+    private final long checkIntervalMs;
+    private final List<Tunnel> tunnels = new ArrayList<>();
+    private final LongAdder reconnects = new LongAdder();
+    private final Object stateLock = new Object();
+    // Внеплановая проверка уже поставлена в очередь монитора
+    private final AtomicBoolean checkPending = new AtomicBoolean(false);
+    private ScheduledExecutorService monitor;
+
+    // Сессия с пробросом одного локального порта; поля меняет только поток монитора
+    private static final class Tunnel {
+        final int localPort;
+        volatile Session session;
+        long retryDelayMs = MIN_RETRY_DELAY_MS;
+        long nextAttemptAt;
+
+        Tunnel(int localPort) {
+            this.localPort = localPort;
+        }
+
+        boolean isActive() {
+            Session current = session;
+            return current != null && current.isConnected();
+        }
+    }
+
+    public SshTunnelSupervisor(String user, String password, String host, int port,
+                               String remoteHost, int remotePort, int firstLocalPort, int sessions,
+                               long checkIntervalMs) {
+        this.user = user;
+        this.password = password;
+        this.host = host;
+        this.port = port;
+        this.remoteHost = remoteHost;
+        this.remotePort = remotePort;
+        this.checkIntervalMs = checkIntervalMs;
+        for (int i = 0; i < Math.max(1, sessions); i++) {
+            tunnels.add(new Tunnel(firstLocalPort + i));
+        }
+    }
+
+    // Открывает все сессии; ошибка, только если не удалось открыть ни одной
+    public void start() throws JSchException {
+        JSchException lastError = null;
+        for (Tunnel tunnel : tunnels) {
+            try {
+                connect(tunnel);
+            } catch (JSchException e) {
+                lastError = e;
+                scheduleRetry(tunnel, e);
+            }
+        }
+        if (getActiveCount() == 0) {
+            throw lastError;
+        }
+        monitor = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "ssh-tunnel-supervisor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        monitor.scheduleWithFixedDelay(this::check, checkIntervalMs, checkIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    public int getActiveCount() {
+        int active = 0;
+        for (Tunnel tunnel : tunnels) {
+            if (tunnel.isActive()) {
+                active++;
+            }
+        }
+        return active;
+    }
+
+    public long getReconnects() {
+        return reconnects.sum();
+    }
+
+    // Просит монитор проверить сессии сейчас и ждет до timeoutMs, пока не станут активны все.
+    // Просьбы, пришедшие до начала проверки, объединяются в одну
+    public void awaitActive(long timeoutMs) throws InterruptedException {
+        ScheduledExecutorService current = monitor;
+        if (current == null || getActiveCount() == tunnels.size()) {
+            return;
+        }
+        if (checkPending.compareAndSet(false, true)) {
+            current.execute(this::checkNow);
+        }
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        synchronized (stateLock) {
+            long remaining;
+            while (getActiveCount() < tunnels.size() && (remaining = deadline - System.currentTimeMillis()) > 0) {
+                stateLock.wait(remaining);
+            }
+        }
+    }
+
+    // Плановая проверка: оборванные сессии переподключаются с растущей паузой
+    private void check() {
+        long now = System.currentTimeMillis();
+        for (Tunnel tunnel : tunnels) {
+            if (!tunnel.isActive() && now >= tunnel.nextAttemptAt) {
+                reconnect(tunnel);
+            }
+        }
+        signal();
+    }
+
+    // Внеплановая проверка по просьбе запроса, которому не досталось соединение.
+    // Пауза между попытками соблюдается и здесь: недоступный сервер SSH не должен
+    // получать подключение на каждый неудачный запрос соединения
+    private void checkNow() {
+        checkPending.set(false);
+        check();
+    }
+
+    private void reconnect(Tunnel tunnel) {
+        System.out.println("[SSH] Сессия на порту " + tunnel.localPort + " неактивна, переподключение...");
+        try {
+            connect(tunnel);
+            reconnects.increment();
+        } catch (JSchException e) {
+            scheduleRetry(tunnel, e);
+        }
+    }
+
+    private void scheduleRetry(Tunnel tunnel, JSchException e) {
+        System.err.println("[SSH] Не удалось открыть сессию на порту " + tunnel.localPort
+                + ", повтор через " + tunnel.retryDelayMs + " мс: " + e.getMessage());
+        tunnel.nextAttemptAt = System.currentTimeMillis() + tunnel.retryDelayMs;
+        tunnel.retryDelayMs = Math.min(tunnel.retryDelayMs * 2, MAX_RETRY_DELAY_MS);
+    }
+
+    private void connect(Tunnel tunnel) throws JSchException {
+        Session old = tunnel.session;
+        if (old != null) {
+            old.disconnect();
+        }
+
+        Session session = new JSch().getSession(user, host, port);
+        session.setPassword(password);
+        Properties config = new Properties();
+        config.put("StrictHostKeyChecking", "no");
+        config.put("PreferredAuthentications", "publickey,keyboard-interactive,password");
+        session.setConfig(config);
+        // Keepalive, чтобы оборванная сессия была замечена монитором, а не запросом
+        session.setServerAliveInterval((int) TimeUnit.SECONDS.toMillis(10));
+        session.setServerAliveCountMax(3);
+        session.connect(CONNECT_TIMEOUT_MS);
+        try {
+            session.setPortForwardingL(tunnel.localPort, remoteHost, remotePort);
+        } catch (JSchException e) {
+            session.disconnect();
+            throw e;
+        }
+
+        tunnel.session = session;
+        tunnel.retryDelayMs = MIN_RETRY_DELAY_MS;
+        tunnel.nextAttemptAt = 0;
+        System.out.println("[SSH] Локальный порт " + tunnel.localPort + " проброшен на "
+                + remoteHost + ":" + remotePort + " через " + host);
+    }
+
+    private void signal() {
+        synchronized (stateLock) {
+            stateLock.notifyAll();
+        }
+    }
+
+    public void close() {
+        if (monitor != null) {
+            monitor.shutdownNow();
+        }
+        for (Tunnel tunnel : tunnels) {
+            Session session = tunnel.session;
+            if (session != null && session.isConnected()) {
+                session.disconnect();
+            }
+        }
+        System.out.println("SSH-сессии закрыты");
+    }
+}
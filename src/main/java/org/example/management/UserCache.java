@@ -0,0 +1,106 @@
+package org.example.management;
+
+import org.example.data.User;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Кэш пользователей по логину перед таблицей users, общий для всех соединений.
+// Ограничен по размеру (вытесняется давно не использованный) и по времени жизни записи.
+// Отсутствие пользователя тоже запоминается, но ненадолго: логин мог занять другой сервер
+public class UserCache {
+    private final int capacity;
+    private final long ttlNanos;
+    private final long negativeTtlNanos;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LinkedHashMap<String, Entry> entries;
+
+    private static final class Entry {
+        final User user;
+        final long expiresAt;
+
+        Entry(User user, long expiresAt) {
+            this.user = user;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    // Результат поиска в кэше: found == false значит, что нужно идти в БД
+    public static final class Lookup {
+        static final Lookup MISS = new Lookup(false, null);
+
+        public final boolean found;
+        public final User user;
+
+        Lookup(boolean found, User user) {
+            this.found = found;
+            this.user = user;
+        }
+    }
+
+    public UserCache(int capacity, long ttlSec, long negativeTtlSec) {
+        this.capacity = Math.max(1, capacity);
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSec);
+        this.negativeTtlNanos = TimeUnit.SECONDS.toNanos(negativeTtlSec);
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > UserCache.this.capacity;
+            }
+        };
+    }
+
+    public synchronized Lookup get(String username) {
+        Entry entry = entries.get(username);
+        if (entry == null || entry.expiresAt - System.nanoTime() <= 0) {
+            if (entry != null) {
+                entries.remove(username);
+            }
+            misses.increment();
+            return Lookup.MISS;
+        }
+        hits.increment();
+        return new Lookup(true, entry.user);
+    }
+
+    // user == null запоминает, что такого логина нет. Такой результат не затирает
+    // пользователя, записанного регистрацией, пока шел запрос к БД
+    public synchronized void put(String username, User user) {
+        if (user == null) {
+            Entry existing = entries.get(username);
+            if (existing != null && existing.user != null) {
+                return;
+            }
+        }
+        long ttl = user != null ? ttlNanos : negativeTtlNanos;
+        if (ttl > 0) {
+            entries.put(username, new Entry(user, System.nanoTime() + ttl));
+        }
+    }
+
+    public synchronized void invalidate(String username) {
+        entries.remove(username);
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public String summary() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return String.format("записей=%d/%d, попаданий=%d, промахов=%d (%.1f%% попаданий)",
+                size(), capacity, h, total - h, total == 0 ? 0 : 100.0 * h / total);
+    }
+}
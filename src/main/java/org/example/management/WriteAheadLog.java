@@ -0,0 +1,336 @@
+package org.example.management;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.CRC32;
+
+// Журнал изменений в каталоге из сегментов. Запись: длина, CRC32 и содержимое.
+// Позиции логические и сквозные для всех сегментов, имя сегмента - позиция его начала.
+// Групповая запись на диск: один force() подтверждает все записи, добавленные до него.
+// Позиция, до которой записи подтверждены БД, хранится в файле checkpoint; сегменты
+// целиком до нее удаляются, кроме нескольких последних, из которых читается лента изменений.
+// Ленту читает scan() своими каналами без монитора журнала, не задерживая append()
+public class WriteAheadLog implements Closeable {
+    private static final int HEADER_SIZE = 2 * Integer.BYTES;
+    private static final int MAX_RECORD_SIZE = 16 * 1024 * 1024;
+    private static final String SEGMENT_SUFFIX = ".wal";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+    private static final long CHECKPOINT_MAGIC = 0x57414C43484B5054L;
+
+    private final Path directory;
+    private final long segmentSize;
+    private final int retainSegments;
+    // Ожидание перед force(), чтобы в одну запись на диск попало больше изменений
+    private final long syncDelayNanos;
+    private final Object syncLock = new Object();
+    private final FileChannel checkpoint;
+    // Начальная позиция -> файл сегмента (под монитором журнала)
+    private final TreeMap<Long, Path> segments = new TreeMap<>();
+    private FileChannel current;
+    private long currentStart;
+    // Логический конец записанных данных (под монитором журнала)
+    private long written;
+    // Все до этой позиции уже на диске
+    private volatile long durable;
+    private volatile long confirmed;
+
+    // Получает записи при обходе; false останавливает обход
+    public interface RecordVisitor {
+        boolean visit(Record record) throws IOException;
+    }
+
+    // Запись журнала и позиция ее конца
+    public static final class Record {
+        final long position;
+        final byte[] payload;
+
+        Record(long position, byte[] payload) {
+            this.position = position;
+            this.payload = payload;
+        }
+    }
+
+    public WriteAheadLog(Path directory, long segmentSize, int retainSegments, long syncDelayMicros) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.retainSegments = Math.max(0, retainSegments);
+        this.syncDelayNanos = syncDelayMicros * 1000;
+        Files.createDirectories(directory);
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    segments.put(Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())), file);
+                } catch (NumberFormatException e) {
+                    System.err.println("Журнал: пропущен посторонний файл " + file);
+                }
+            }
+        }
+        checkpoint = FileChannel.open(directory.resolve(CHECKPOINT_FILE), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        confirmed = readCheckpoint();
+
+        if (segments.isEmpty()) {
+            openSegment(confirmed);
+        } else {
+            currentStart = segments.lastKey();
+            current = FileChannel.open(segments.lastEntry().getValue(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+            written = currentStart + current.size();
+            current.position(current.size());
+        }
+        durable = written;
+    }
+
+    // Место, которое запись с телом payloadLength байт занимает в журнале
+    public static long recordSize(int payloadLength) {
+        return HEADER_SIZE + payloadLength;
+    }
+
+    // Возвращает позицию конца записи, которую нужно передать в sync
+    public synchronized long append(byte[] payload) throws IOException {
+        if (current.size() > 0 && current.size() + HEADER_SIZE + payload.length > segmentSize) {
+            rotate();
+        }
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + payload.length);
+        buffer.putInt(payload.length).putInt((int) crc.getValue()).put(payload).flip();
+        while (buffer.hasRemaining()) {
+            current.write(buffer);
+        }
+        written += HEADER_SIZE + payload.length;
+        return written;
+    }
+
+    // Заполненный сегмент записывается на диск и закрывается
+    private void rotate() throws IOException {
+        current.force(false);
+        current.close();
+        openSegment(written);
+    }
+
+    private void openSegment(long start) throws IOException {
+        Path file = directory.resolve(String.format("%020d%s", start, SEGMENT_SUFFIX));
+        current = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        current.position(current.size());
+        currentStart = start;
+        written = start + current.size();
+        segments.put(start, file);
+        syncDirectory();
+    }
+
+    // Новый файл сегмента переживет сбой, только когда на диск записан и каталог
+    private void syncDirectory() throws IOException {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Некоторые системы (Windows) не открывают каталог как файл; там это делает сама ФС
+        }
+    }
+
+    // Дожидается, пока запись до position окажется на диске. Потоки, пришедшие во время
+    // force(), ждут на syncLock и обычно обнаруживают, что их запись уже подтверждена
+    public void sync(long position) throws IOException {
+        if (durable >= position) {
+            return;
+        }
+        synchronized (syncLock) {
+            if (durable >= position) {
+                return;
+            }
+            if (syncDelayNanos > 0) {
+                LockSupport.parkNanos(syncDelayNanos);
+            }
+            long target;
+            FileChannel channel;
+            synchronized (this) {
+                target = written;
+                channel = current;
+            }
+            try {
+                channel.force(false);
+            } catch (ClosedChannelException e) {
+                // Сегмент уже закрыт при смене, а перед закрытием он был записан на диск целиком
+            }
+            durable = target;
+        }
+    }
+
+    // БД подтвердила записи до position: сохраняем отметку и удаляем ненужные сегменты
+    public synchronized void confirm(long position) throws IOException {
+        if (position <= confirmed) {
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(2 * Long.BYTES);
+        buffer.putLong(position).putLong(position ^ CHECKPOINT_MAGIC).flip();
+        while (buffer.hasRemaining()) {
+            checkpoint.write(buffer, buffer.position());
+        }
+        checkpoint.force(false);
+        confirmed = position;
+
+        // Сегмент можно удалить, если он закрыт и подтвержден целиком
+        List<Long> starts = new ArrayList<>(segments.headMap(currentStart, false).keySet());
+        int removable = starts.size() - retainSegments;
+        for (int i = 0; i < removable; i++) {
+            Long next = segments.higherKey(starts.get(i));
+            if (next == null || next > confirmed) {
+                break;
+            }
+            Files.deleteIfExists(segments.remove(starts.get(i)));
+        }
+    }
+
+    public long getConfirmed() {
+        return confirmed;
+    }
+
+    // Позиция начала самого старого сохраненного сегмента
+    public synchronized long getFirstPosition() {
+        return segments.firstKey();
+    }
+
+    private long readCheckpoint() throws IOException {
+        if (checkpoint.size() < 2 * Long.BYTES) {
+            return 0;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(2 * Long.BYTES);
+        readFully(checkpoint, buffer, 0);
+        buffer.flip();
+        long position = buffer.getLong();
+        if ((position ^ CHECKPOINT_MAGIC) != buffer.getLong()) {
+            // Отметка повреждена: повтор подтвержденных записей безопасен, они идемпотентны
+            System.err.println("Журнал: отметка подтверждения повреждена, журнал будет прочитан целиком");
+            return 0;
+        }
+        return position;
+    }
+
+    // Все целые записи после position по порядку. Недописанный хвост последнего сегмента
+    // (сбой во время записи) отрезается. Повреждение в закрытом сегменте - ошибка: записи
+    // после него нельзя применять поверх пропуска. Используется при запуске
+    public synchronized List<Record> readFrom(long position) throws IOException {
+        List<Record> records = new ArrayList<>();
+        for (Long start : segments.keySet()) {
+            Long next = segments.higherKey(start);
+            if (next != null && next <= position) {
+                continue;
+            }
+            FileChannel channel = start == currentStart ? current
+                    : FileChannel.open(segments.get(start), StandardOpenOption.READ);
+            try {
+                long end = readSegment(channel, start, channel.size(), position, record -> {
+                    records.add(record);
+                    return true;
+                });
+                if (next != null && start + end != next) {
+                    throw new StreamCorruptedException("Журнал поврежден: сегмент " + segments.get(start)
+                            + " читается только до смещения " + end + ", следующий начинается с " + next);
+                }
+                if (start == currentStart && end < channel.size()) {
+                    System.err.println("Журнал: отброшен поврежденный хвост " + (channel.size() - end) + " байт");
+                    channel.truncate(end);
+                    channel.position(end);
+                    written = start + end;
+                    durable = written;
+                }
+            } finally {
+                if (channel != current) {
+                    channel.close();
+                }
+            }
+        }
+        return records;
+    }
+
+    // Обходит записи, начинающиеся не раньше position, пока visitor не вернет false.
+    // Монитор журнала берется только для списка сегментов: читаются записи, целиком
+    // добавленные до начала обхода. false, если сегмент с position уже удален
+    public boolean scan(long position, RecordVisitor visitor) throws IOException {
+        List<Long> starts;
+        List<Path> files;
+        long limit;
+        synchronized (this) {
+            if (position < segments.firstKey()) {
+                return false;
+            }
+            limit = written;
+            starts = new ArrayList<>(segments.tailMap(segments.floorKey(position), true).keySet());
+            files = new ArrayList<>();
+            for (Long start : starts) {
+                files.add(segments.get(start));
+            }
+        }
+        for (int i = 0; i < starts.size(); i++) {
+            long start = starts.get(i);
+            try (FileChannel channel = FileChannel.open(files.get(i), StandardOpenOption.READ)) {
+                long size = Math.min(channel.size(), limit - start);
+                if (readSegment(channel, start, size, position, visitor) < 0) {
+                    return true;
+                }
+            } catch (NoSuchFileException e) {
+                // Сегмент удалили после подтверждения БД, пока шел обход
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Возвращает смещение конца последней целой записи сегмента или -1, если visitor
+    // остановил обход. Передаются записи, заканчивающиеся после позиции after
+    private long readSegment(FileChannel channel, long start, long size, long after, RecordVisitor visitor)
+            throws IOException {
+        long offset = 0;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (offset + HEADER_SIZE <= size) {
+            header.clear();
+            readFully(channel, header, offset);
+            header.flip();
+            int length = header.getInt();
+            int checksum = header.getInt();
+            if (length < 0 || length > MAX_RECORD_SIZE || offset + HEADER_SIZE + length > size) {
+                break;
+            }
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            readFully(channel, payload, offset + HEADER_SIZE);
+            CRC32 crc = new CRC32();
+            crc.update(payload.array());
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            offset += HEADER_SIZE + length;
+            if (start + offset > after && !visitor.visit(new Record(start + offset, payload.array()))) {
+                return -1;
+            }
+        }
+        return offset;
+    }
+
+    private void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Неожиданный конец журнала в " + directory);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        current.close();
+        checkpoint.close();
+    }
+}
@@ -0,0 +1,475 @@
+package org.example.management;
+
+import org.example.data.Product;
+import org.example.network.ProductCodec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+// Отложенная запись в БД (-Ddb.writeBehind=true). Изменение подтверждается клиенту после
+// записи в локальный журнал, а в БД уходит фоновым потоком: все, что накопилось за время
+// предыдущей транзакции, пишется одной транзакцией пакетами. Число изменений, еще не
+// записанных в БД, ограничено: при отставании БД писатели ждут свободного места.
+// id продуктов и организаций выдаются заранее блоками из последовательностей БД.
+// Записи журнала помечены версией коллекции, поэтому из журнала же читается лента изменений
+// для клиентов, отставших дальше, чем помнит ChangeLog. Чтение начинается с ближайшей
+// отметки версия -> позиция, а не с начала журнала
+public class WriteBehindQueue {
+    private static final int CAPACITY = Integer.getInteger("db.writeBehindCapacity", 10_000);
+    private static final int MAX_BATCH = Integer.getInteger("db.writeBehindBatch", 1000);
+    private static final int ID_BLOCK_SIZE = 100;
+    private static final long MAX_RETRY_DELAY_MS = 5000;
+    private static final long SEGMENT_SIZE = Long.getLong("db.walSegmentSize", 16L * 1024 * 1024);
+    // Подтвержденные сегменты, которые остаются для ленты изменений
+    private static final int RETAIN_SEGMENTS = Integer.getInteger("db.walRetainSegments", 4);
+    private static final long SYNC_DELAY_MICROS = Long.getLong("db.walSyncDelayMicros", 0);
+    // Каждая такая по счету запись попадает в индекс версий
+    private static final int INDEX_INTERVAL = 64;
+
+    private static final byte UPSERT = 1;
+    private static final byte REMOVE = 2;
+
+    private final DatabaseManager databaseManager;
+    private final WriteAheadLog log;
+    private final BlockingQueue<Change> queue = new LinkedBlockingQueue<>();
+    private final Capacity capacity = new Capacity(CAPACITY);
+    // Продукты с изменениями, еще не записанными в БД, и число таких изменений
+    private final Map<Long, Integer> pendingIds = new ConcurrentHashMap<>();
+    // Версия -> позиция начала ее записи в журнале, для записей этого запуска
+    private final ConcurrentSkipListMap<Long, Long> versionIndex = new ConcurrentSkipListMap<>();
+    // Записей, добавленных в журнал за этот запуск (под writeLock коллекции)
+    private long appended;
+    private final IdBlock productIds;
+    private final IdBlock organizationIds;
+    // Получает id продуктов, изменения которых БД отвергла, чтобы вернуть их к состоянию в БД
+    private final Consumer<Long> rejectedHandler;
+    private final Thread flusher;
+    private final long epoch;
+    private volatile boolean running = true;
+
+    // Изменение одного продукта или удаление нескольких (clear), ставшее версией коллекции version
+    private static final class Change {
+        final long position;
+        final long epoch;
+        final long version;
+        final Product product;
+        final List<Long> removedIds;
+        final List<Long> releasedOrganizationIds;
+
+        Change(long position, long epoch, long version, Product product, List<Long> removedIds,
+               List<Long> releasedOrganizationIds) {
+            this.position = position;
+            this.epoch = epoch;
+            this.version = version;
+            this.product = product;
+            this.removedIds = removedIds;
+            this.releasedOrganizationIds = releasedOrganizationIds;
+        }
+    }
+
+    // Места в очереди. Восстановленные из журнала изменения занимают места без ожидания,
+    // даже если их больше CAPACITY: тогда писатели ждут, пока очередь не станет короче
+    private static final class Capacity extends Semaphore {
+        Capacity(int permits) {
+            super(permits);
+        }
+
+        void occupy(int count) {
+            reducePermits(count);
+        }
+    }
+
+    // Блок заранее выданных значений последовательности
+    private interface IdSource {
+        long[] allocate(int count) throws SQLException;
+    }
+
+    private static final class IdBlock {
+        private final IdSource source;
+        private long[] ids = new long[0];
+        private int next;
+
+        IdBlock(IdSource source) {
+            this.source = source;
+        }
+
+        synchronized long next() throws SQLException {
+            if (next == ids.length) {
+                ids = source.allocate(ID_BLOCK_SIZE);
+                next = 0;
+            }
+            return ids[next++];
+        }
+    }
+
+    public static boolean isEnabled() {
+        return Boolean.getBoolean("db.writeBehind");
+    }
+
+    public WriteBehindQueue(DatabaseManager databaseManager, long epoch, Consumer<Long> rejectedHandler)
+            throws IOException {
+        this.databaseManager = databaseManager;
+        this.epoch = epoch;
+        this.rejectedHandler = rejectedHandler;
+        this.log = new WriteAheadLog(Paths.get(System.getProperty("db.walDir", "collection-wal")),
+                SEGMENT_SIZE, RETAIN_SEGMENTS, SYNC_DELAY_MICROS);
+        this.productIds = new IdBlock(databaseManager::allocateProductIds);
+        this.organizationIds = new IdBlock(databaseManager::allocateOrganizationIds);
+        this.flusher = new Thread(this::flushLoop, "write-behind-flusher");
+        flusher.setDaemon(true);
+    }
+
+    // Накладывает на загруженную коллекцию изменения из журнала, которые БД еще не подтвердила,
+    // ставит их в очередь на запись и запускает фоновую запись. Ждать БД при этом не нужно
+    public void recover(ProductStore store) throws IOException {
+        List<Change> changes = new ArrayList<>();
+        for (WriteAheadLog.Record record : log.readFrom(log.getConfirmed())) {
+            changes.add(decode(record));
+        }
+        for (Change change : changes) {
+            if (change.product != null) {
+                store.put(change.product);
+            }
+            for (Long id : change.removedIds) {
+                store.remove(id);
+            }
+        }
+        capacity.occupy(changes.size());
+        for (Change change : changes) {
+            add(change);
+        }
+        flusher.start();
+        if (!changes.isEmpty()) {
+            System.out.println("Из журнала восстановлено изменений, не записанных в БД: " + changes.size());
+        }
+    }
+
+    // Изменения коллекции из журнала с версиями (sinceVersion, untilVersion]: id -> последняя
+    // версия продукта или null для удаленного. null, если журнал не покрывает весь промежуток
+    public Map<Long, Product> changesSince(long sinceVersion, long untilVersion) {
+        Map.Entry<Long, Long> start = versionIndex.floorEntry(sinceVersion + 1);
+        if (start == null) {
+            return null;
+        }
+        Map<Long, Product> changes = new LinkedHashMap<>();
+        long[] expected = {sinceVersion + 1};
+        try {
+            boolean complete = log.scan(start.getValue(), record -> {
+                Change change = decode(record);
+                if (change.epoch != epoch || change.version <= sinceVersion) {
+                    return true;
+                }
+                // Версии без записи в журнале (согласование с БД) делают промежуток неполным
+                if (change.version > untilVersion || change.version != expected[0]) {
+                    return false;
+                }
+                expected[0]++;
+                if (change.product != null) {
+                    changes.put(change.product.getId(), change.product);
+                }
+                for (Long id : change.removedIds) {
+                    changes.put(id, null);
+                }
+                return true;
+            });
+            if (!complete) {
+                return null;
+            }
+        } catch (IOException e) {
+            System.err.println("Ошибка чтения журнала: " + e.getMessage());
+            return null;
+        }
+        return expected[0] == untilVersion + 1 ? changes : null;
+    }
+
+    // Места в очереди берутся до блокировки коллекции: ожидание при отставании БД
+    // не должно держать writeLock
+    public void reserve(int count) throws InterruptedException {
+        capacity.acquire(count);
+    }
+
+    public void release(int count) {
+        capacity.release(count);
+    }
+
+    public long nextProductId() throws SQLException {
+        return productIds.next();
+    }
+
+    public long nextOrganizationId() throws SQLException {
+        return organizationIds.next();
+    }
+
+    // Вызывается под writeLock коллекции, чтобы порядок в журнале совпадал с порядком в памяти;
+    // version - версия коллекции, которой станет изменение.
+    // Возвращает позицию для sync; место в очереди должно быть заранее взято reserve(1)
+    public long upsert(long version, Product product, Long releasedOrganizationId) throws IOException {
+        List<Long> released = releasedOrganizationId != null
+                ? Collections.singletonList(releasedOrganizationId) : Collections.emptyList();
+        return enqueue(version, product, Collections.emptyList(), released);
+    }
+
+    public long remove(long version, List<Long> ids, List<Long> releasedOrganizationIds) throws IOException {
+        return enqueue(version, null, ids, releasedOrganizationIds);
+    }
+
+    // Вызывается без блокировок: подтверждение записи на диск общее для всех ожидающих
+    public void sync(long position) throws IOException {
+        log.sync(position);
+    }
+
+    private long enqueue(long version, Product product, List<Long> removedIds, List<Long> releasedOrganizationIds)
+            throws IOException {
+        byte[] payload = encode(version, product, removedIds, releasedOrganizationIds);
+        long position = log.append(payload);
+        if (appended++ % INDEX_INTERVAL == 0) {
+            versionIndex.put(version, position - WriteAheadLog.recordSize(payload.length));
+        }
+        add(new Change(position, epoch, version, product, removedIds, releasedOrganizationIds));
+        return position;
+    }
+
+    private void add(Change change) {
+        if (change.product != null) {
+            pendingIds.merge(change.product.getId(), 1, Integer::sum);
+        }
+        for (Long id : change.removedIds) {
+            pendingIds.merge(id, 1, Integer::sum);
+        }
+        queue.add(change);
+    }
+
+    private void markFlushed(List<Change> batch) {
+        for (Change change : batch) {
+            if (change.product != null) {
+                pendingIds.computeIfPresent(change.product.getId(), (id, count) -> count > 1 ? count - 1 : null);
+            }
+            for (Long id : change.removedIds) {
+                pendingIds.computeIfPresent(id, (key, count) -> count > 1 ? count - 1 : null);
+            }
+        }
+    }
+
+    // Строка этого продукта в БД устарела: в памяти уже есть более новое изменение
+    public boolean isPending(Long id) {
+        return pendingIds.containsKey(id);
+    }
+
+    // Копия id продуктов, изменения которых еще не записаны в БД
+    public Set<Long> getPendingIds() {
+        return new HashSet<>(pendingIds.keySet());
+    }
+
+    private void flushLoop() {
+        List<Change> batch = new ArrayList<>();
+        while (running || !queue.isEmpty()) {
+            try {
+                Change first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, MAX_BATCH - 1);
+                flushWithRetry(batch);
+                markFlushed(batch);
+                capacity.release(batch.size());
+                log.confirm(batch.get(batch.size() - 1).position);
+                pruneIndex();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (IOException e) {
+                System.err.println("Ошибка записи отметки журнала: " + e.getMessage());
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    // Отметки удаленных сегментов больше не нужны: позиции растут вместе с версиями
+    private void pruneIndex() {
+        long first = log.getFirstPosition();
+        Map.Entry<Long, Long> entry;
+        while ((entry = versionIndex.firstEntry()) != null && entry.getValue() < first) {
+            versionIndex.remove(entry.getKey());
+        }
+    }
+
+    // БД недоступна - повторяем всю пачку с растущей паузой. Если БД отвергла данные,
+    // пачка разбивается на отдельные изменения, и отвергнутые откатываются в памяти
+    private void flushWithRetry(List<Change> batch) throws InterruptedException {
+        long delay = 100;
+        while (true) {
+            try {
+                flush(batch);
+                return;
+            } catch (SQLException e) {
+                if (isDataError(e)) {
+                    flushOneByOne(batch);
+                    return;
+                }
+                System.err.println("Ошибка отложенной записи в БД, повтор через " + delay + " мс: " + e.getMessage());
+                Thread.sleep(delay);
+                delay = Math.min(delay * 2, MAX_RETRY_DELAY_MS);
+            }
+        }
+    }
+
+    private void flushOneByOne(List<Change> batch) throws InterruptedException {
+        for (Change change : batch) {
+            List<Change> single = Collections.singletonList(change);
+            long delay = 100;
+            while (true) {
+                try {
+                    flush(single);
+                    break;
+                } catch (SQLException e) {
+                    if (isDataError(e)) {
+                        reject(change, e);
+                        break;
+                    }
+                    System.err.println("Ошибка отложенной записи в БД, повтор через " + delay + " мс: " + e.getMessage());
+                    Thread.sleep(delay);
+                    delay = Math.min(delay * 2, MAX_RETRY_DELAY_MS);
+                }
+            }
+        }
+    }
+
+    private void reject(Change change, SQLException e) {
+        List<Long> ids = change.product != null
+                ? Collections.singletonList(change.product.getId()) : change.removedIds;
+        // У ошибки пакета причина лежит в следующем исключении
+        SQLException cause = e.getNextException() != null ? e.getNextException() : e;
+        System.err.println("БД отвергла изменение продуктов " + ids + ": " + cause.getMessage());
+        for (Long id : ids) {
+            rejectedHandler.accept(id);
+        }
+    }
+
+    // Нарушение ограничений или недопустимые данные: повтор не поможет
+    private static boolean isDataError(SQLException e) {
+        String state = e.getSQLState();
+        return state != null && (state.startsWith("22") || state.startsWith("23"));
+    }
+
+    // Изменения одного продукта схлопываются до последнего: многострочный upsert
+    // не может изменить одну строку дважды
+    private void flush(List<Change> changes) throws SQLException {
+        Map<Long, Product> latest = new LinkedHashMap<>();
+        Set<Long> released = new LinkedHashSet<>();
+        for (Change change : changes) {
+            if (change.product != null) {
+                latest.put(change.product.getId(), change.product);
+            }
+            for (Long id : change.removedIds) {
+                latest.put(id, null);
+            }
+            released.addAll(change.releasedOrganizationIds);
+        }
+        List<Product> upserts = new ArrayList<>();
+        List<Long> removed = new ArrayList<>();
+        for (Map.Entry<Long, Product> entry : latest.entrySet()) {
+            if (entry.getValue() != null) {
+                upserts.add(entry.getValue());
+            } else {
+                removed.add(entry.getKey());
+            }
+        }
+        databaseManager.applyChanges(upserts, removed, released);
+    }
+
+    private byte[] encode(long version, Product product, List<Long> removedIds, List<Long> releasedOrganizationIds)
+            throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeLong(epoch);
+        out.writeLong(version);
+        if (product != null) {
+            out.writeByte(UPSERT);
+            ProductCodec.writeProduct(out, product);
+        } else {
+            out.writeByte(REMOVE);
+            writeIds(out, removedIds);
+        }
+        writeIds(out, releasedOrganizationIds);
+        return bytes.toByteArray();
+    }
+
+    private static Change decode(WriteAheadLog.Record record) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record.payload));
+        long epoch = in.readLong();
+        long version = in.readLong();
+        byte type = in.readByte();
+        Product product = null;
+        List<Long> removedIds = Collections.emptyList();
+        if (type == UPSERT) {
+            product = ProductCodec.readProduct(in);
+        } else if (type == REMOVE) {
+            removedIds = readIds(in);
+        } else {
+            throw new IOException("Неизвестный тип записи журнала: " + type);
+        }
+        return new Change(record.position, epoch, version, product, removedIds, readIds(in));
+    }
+
+    private static void writeIds(DataOutputStream out, List<Long> ids) throws IOException {
+        out.writeInt(ids.size());
+        for (Long id : ids) {
+            out.writeLong(id);
+        }
+    }
+
+    private static List<Long> readIds(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        List<Long> ids = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            ids.add(in.readLong());
+        }
+        return ids;
+    }
+
+    // Дожидается записи в БД всего, что уже в очереди; остаток останется в журнале.
+    // Если БД так и не приняла изменения, повторы прерываются, а журнал закрывается
+    // только после остановки потока записи, иначе его confirm() попадет в закрытый файл
+    public void close() {
+        running = false;
+        try {
+            flusher.join(TimeUnit.SECONDS.toMillis(30));
+            if (flusher.isAlive()) {
+                System.err.println("БД не приняла отложенные изменения, они останутся в журнале до следующего запуска");
+                flusher.interrupt();
+                flusher.join(TimeUnit.SECONDS.toMillis(10));
+            }
+            if (flusher.isAlive()) {
+                System.err.println("Поток отложенной записи не остановился, журнал не закрыт");
+                return;
+            }
+            log.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            System.err.println("Ошибка закрытия журнала: " + e.getMessage());
+        }
+    }
+}
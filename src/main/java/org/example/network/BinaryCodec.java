@@ -0,0 +1,260 @@
+package org.example.network;
+
+import org.example.data.Product;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+// Версия протокола 2: компактный двоичный формат без дескрипторов классов.
+// Каждое значение начинается с байта-тега; неизвестные типы передаются
+// через стандартную сериализацию под тегом SERIALIZED.
+public final class BinaryCodec implements MessageCodec {
+    public static final BinaryCodec INSTANCE = new BinaryCodec();
+
+    private static final int TAG_NULL = 0;
+    private static final int TAG_INT = 1;
+    private static final int TAG_LONG = 2;
+    private static final int TAG_STRING = 3;
+    private static final int TAG_AUTH_REQUEST = 4;
+    private static final int TAG_COMMAND_REQUEST = 5;
+    private static final int TAG_RESPONSE = 6;
+    private static final int TAG_PRODUCT_LIST = 7;
+    private static final int TAG_PRODUCT = 8;
+    private static final int TAG_PRODUCTS_REQUEST = 9;
+    private static final int TAG_CHANGES_REQUEST = 10;
+    private static final int TAG_PRODUCT_DELTA = 11;
+    private static final int TAG_SUBSCRIBE_REQUEST = 12;
+    private static final int TAG_RESUME_REQUEST = 13;
+    private static final int TAG_SESSION_TICKET = 14;
+    private static final int TAG_SERIALIZED = 127;
+
+    private BinaryCodec() {
+    }
+
+    @Override
+    public byte[] encode(Object message) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        DataOutputStream out = new DataOutputStream(bytes);
+        writeValue(out, message);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    @Override
+    public Object decode(byte[] payload, int offset, int length) throws IOException, ClassNotFoundException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload, offset, length));
+        return readValue(in);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(TAG_NULL);
+        } else if (value instanceof Integer) {
+            out.writeByte(TAG_INT);
+            BinaryIO.writeVarInt(out, (Integer) value);
+        } else if (value instanceof Long) {
+            out.writeByte(TAG_LONG);
+            BinaryIO.writeSignedVarLong(out, (Long) value);
+        } else if (value instanceof String) {
+            out.writeByte(TAG_STRING);
+            BinaryIO.writeString(out, (String) value);
+        } else if (value instanceof AuthRequest) {
+            AuthRequest request = (AuthRequest) value;
+            out.writeByte(TAG_AUTH_REQUEST);
+            BinaryIO.writeVarLong(out, request.getCorrelationId());
+            BinaryIO.writeString(out, request.getUsername());
+            BinaryIO.writeString(out, request.getPassword());
+            out.writeBoolean(request.isRegistration());
+        } else if (value instanceof CommandRequest) {
+            CommandRequest request = (CommandRequest) value;
+            out.writeByte(TAG_COMMAND_REQUEST);
+            BinaryIO.writeVarLong(out, request.getCorrelationId());
+            BinaryIO.writeString(out, request.getCommand());
+            writeStrings(out, request.getArgs());
+            BinaryIO.writeString(out, request.getToken());
+        } else if (value instanceof ResumeRequest) {
+            ResumeRequest request = (ResumeRequest) value;
+            out.writeByte(TAG_RESUME_REQUEST);
+            BinaryIO.writeVarLong(out, request.getCorrelationId());
+            BinaryIO.writeString(out, request.getToken());
+        } else if (value instanceof SessionTicket) {
+            SessionTicket ticket = (SessionTicket) value;
+            out.writeByte(TAG_SESSION_TICKET);
+            BinaryIO.writeVarInt(out, ticket.getUserId());
+            BinaryIO.writeString(out, ticket.getToken());
+        } else if (value instanceof Response) {
+            Response response = (Response) value;
+            out.writeByte(TAG_RESPONSE);
+            BinaryIO.writeVarLong(out, response.getCorrelationId());
+            out.writeBoolean(response.isSuccess());
+            BinaryIO.writeString(out, response.getMessage());
+            writeValue(out, response.getData());
+        } else if (value instanceof ProductsRequest) {
+            out.writeByte(TAG_PRODUCTS_REQUEST);
+            BinaryIO.writeVarLong(out, ((ProductsRequest) value).getCorrelationId());
+        } else if (value instanceof ChangesRequest) {
+            ChangesRequest request = (ChangesRequest) value;
+            out.writeByte(TAG_CHANGES_REQUEST);
+            BinaryIO.writeVarLong(out, request.getCorrelationId());
+            out.writeLong(request.getEpoch());
+            BinaryIO.writeSignedVarLong(out, request.getSinceVersion());
+        } else if (value instanceof SubscribeRequest) {
+            SubscribeRequest request = (SubscribeRequest) value;
+            out.writeByte(TAG_SUBSCRIBE_REQUEST);
+            BinaryIO.writeVarLong(out, request.getCorrelationId());
+            out.writeLong(request.getEpoch());
+            BinaryIO.writeSignedVarLong(out, request.getSinceVersion());
+        } else if (value instanceof ProductDelta) {
+            ProductDelta delta = (ProductDelta) value;
+            out.writeByte(TAG_PRODUCT_DELTA);
+            out.writeLong(delta.getEpoch());
+            BinaryIO.writeSignedVarLong(out, delta.getVersion());
+            out.writeBoolean(delta.isFull());
+            ProductCodec.writeProducts(out, delta.getUpserts());
+            BinaryIO.writeVarInt(out, delta.getRemovedIds().size());
+            for (Long id : delta.getRemovedIds()) {
+                BinaryIO.writeVarLong(out, id);
+            }
+        } else if (value instanceof Product) {
+            out.writeByte(TAG_PRODUCT);
+            ProductCodec.writeProduct(out, (Product) value);
+        } else if (value instanceof Collection && isProductCollection((Collection<?>) value)) {
+            out.writeByte(TAG_PRODUCT_LIST);
+            ProductCodec.writeProducts(out, (Collection<Product>) value);
+        } else {
+            byte[] serialized = SerializationCodec.INSTANCE.encode(value);
+            out.writeByte(TAG_SERIALIZED);
+            BinaryIO.writeVarInt(out, serialized.length);
+            out.write(serialized);
+        }
+    }
+
+    private Object readValue(DataInputStream in) throws IOException, ClassNotFoundException {
+        int tag = in.readUnsignedByte();
+        switch (tag) {
+            case TAG_NULL:
+                return null;
+            case TAG_INT:
+                return BinaryIO.readVarInt(in);
+            case TAG_LONG:
+                return BinaryIO.readSignedVarLong(in);
+            case TAG_STRING:
+                return BinaryIO.readString(in);
+            case TAG_AUTH_REQUEST: {
+                long correlationId = BinaryIO.readVarLong(in);
+                AuthRequest request = new AuthRequest(BinaryIO.readString(in), BinaryIO.readString(in));
+                request.setIsRegistration(in.readBoolean());
+                request.setCorrelationId(correlationId);
+                return request;
+            }
+            case TAG_COMMAND_REQUEST: {
+                long correlationId = BinaryIO.readVarLong(in);
+                String command = BinaryIO.readString(in);
+                String[] args = readStrings(in);
+                CommandRequest request = new CommandRequest(command, args, BinaryIO.readString(in));
+                request.setCorrelationId(correlationId);
+                return request;
+            }
+            case TAG_RESUME_REQUEST: {
+                long correlationId = BinaryIO.readVarLong(in);
+                ResumeRequest request = new ResumeRequest(BinaryIO.readString(in));
+                request.setCorrelationId(correlationId);
+                return request;
+            }
+            case TAG_SESSION_TICKET:
+                return new SessionTicket(BinaryIO.readVarInt(in), BinaryIO.readString(in));
+            case TAG_PRODUCTS_REQUEST: {
+                ProductsRequest request = new ProductsRequest();
+                request.setCorrelationId(BinaryIO.readVarLong(in));
+                return request;
+            }
+            case TAG_CHANGES_REQUEST: {
+                long correlationId = BinaryIO.readVarLong(in);
+                ChangesRequest request = new ChangesRequest(in.readLong(), BinaryIO.readSignedVarLong(in));
+                request.setCorrelationId(correlationId);
+                return request;
+            }
+            case TAG_SUBSCRIBE_REQUEST: {
+                long correlationId = BinaryIO.readVarLong(in);
+                SubscribeRequest request = new SubscribeRequest(in.readLong(), BinaryIO.readSignedVarLong(in));
+                request.setCorrelationId(correlationId);
+                return request;
+            }
+            case TAG_PRODUCT_DELTA: {
+                long epoch = in.readLong();
+                long version = BinaryIO.readSignedVarLong(in);
+                boolean full = in.readBoolean();
+                List<Product> upserts = ProductCodec.readProducts(in);
+                int removedCount = BinaryIO.readVarInt(in);
+                BinaryIO.checkSize(in, removedCount, "Недопустимый размер списка");
+                List<Long> removedIds = new ArrayList<>(removedCount);
+                for (int i = 0; i < removedCount; i++) {
+                    removedIds.add(BinaryIO.readVarLong(in));
+                }
+                return new ProductDelta(epoch, version, full, upserts, removedIds);
+            }
+            case TAG_RESPONSE: {
+                long correlationId = BinaryIO.readVarLong(in);
+                boolean success = in.readBoolean();
+                String message = BinaryIO.readString(in);
+                Response response = new Response(success, message, readValue(in));
+                response.setCorrelationId(correlationId);
+                return response;
+            }
+            case TAG_PRODUCT:
+                return ProductCodec.readProduct(in);
+            case TAG_PRODUCT_LIST:
+                return ProductCodec.readProducts(in);
+            case TAG_SERIALIZED: {
+                int length = BinaryIO.readVarInt(in);
+                BinaryIO.checkSize(in, length, "Недопустимая длина данных");
+                byte[] serialized = new byte[length];
+                in.readFully(serialized);
+                return SerializationCodec.INSTANCE.decode(serialized, 0, length);
+            }
+            default:
+                throw new StreamCorruptedException("Неизвестный тег сообщения: " + tag);
+        }
+    }
+
+    private static boolean isProductCollection(Collection<?> collection) {
+        for (Object element : collection) {
+            if (!(element instanceof Product)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void writeStrings(DataOutputStream out, String[] values) throws IOException {
+        if (values == null) {
+            BinaryIO.writeVarInt(out, 0);
+            return;
+        }
+        BinaryIO.writeVarInt(out, values.length + 1);
+        for (String value : values) {
+            BinaryIO.writeString(out, value);
+        }
+    }
+
+    private static String[] readStrings(DataInputStream in) throws IOException {
+        int length = BinaryIO.readVarInt(in) - 1;
+        if (length == -1) {
+            return null;
+        }
+        BinaryIO.checkSize(in, length, "Недопустимое число аргументов");
+        String[] values = new String[length];
+        for (int i = 0; i < length; i++) {
+            values[i] = BinaryIO.readString(in);
+        }
+        return values;
+    }
+}
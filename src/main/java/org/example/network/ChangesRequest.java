@@ -0,0 +1,29 @@
+package org.example.network;
+
+// Запрос изменений коллекции после известной клиенту версии.
+// epoch - идентификатор экземпляра коллекции на сервере: при несовпадении сервер отдает полный снимок.
+public class ChangesRequest extends Request {
+    private static final long serialVersionUID = 1L;
+    private final long epoch;
+    private final long sinceVersion;
+
+    public ChangesRequest(long epoch, long sinceVersion) {
+        super("GET_CHANGES");
+        this.epoch = epoch;
+        this.sinceVersion = sinceVersion;
+    }
+
+    public long getEpoch() {
+        return epoch;
+    }
+
+    public long getSinceVersion() {
+        return sinceVersion;
+    }
+
+    @Override
+    public String toString() {
+        return "ChangesRequest{epoch=" + epoch + ", sinceVersion=" + sinceVersion +
+                ", correlationId=" + getCorrelationId() + "}";
+    }
+}
@@ -4,15 +4,14 @@ public class CommandRequest extends Request {
     private static final long serialVersionUID = 1L;
     private final String command;
     private final String[] args;
-    private final String username;
-    private final String passwordHash;
+    // Токен сессии, выданный сервером при входе
+    private final String token;
 
-    public CommandRequest(String command, String[] args, String username, String passwordHash) {
+    public CommandRequest(String command, String[] args, String token) {
         super("COMMAND");
         this.command = command;
         this.args = args;
-        this.username = username;
-        this.passwordHash = passwordHash;
+        this.token = token;
     }
 
     public String getCommand() {
@@ -23,17 +22,12 @@ public class CommandRequest extends Request {
         return args;
     }
 
-    public String getUsername() {
-        return username;
-    }
-
-    public String getPasswordHash() {
-        return passwordHash;
+    public String getToken() {
+        return token;
     }
 
     @Override
     public String toString() {
-        return "CommandRequest{command='" + command + "', username='" + username +
-                "', timestamp=" + getTimestamp() + "}";
+        return "CommandRequest{command='" + command + "', timestamp=" + getTimestamp() + "}";
     }
 }
\ No newline at end of file
@@ -0,0 +1,65 @@
+package org.example.network;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+
+// Кадрирование сообщений: 4 байта длины (big-endian) + тело сообщения.
+// Каждый кадр самодостаточен, поэтому его можно декодировать отдельно
+// (это нужно неблокирующему серверу, который собирает кадры из кусков).
+public final class FrameCodec {
+    public static final int HEADER_SIZE = 4;
+    public static final int MAX_FRAME_SIZE = 64 * 1024 * 1024;
+
+    private FrameCodec() {
+    }
+
+    // Готовый к отправке кадр (заголовок + тело) для неблокирующей записи
+    public static ByteBuffer encodeFrame(MessageCodec codec, Object message) throws IOException {
+        byte[] payload = encodePayload(codec, message);
+        ByteBuffer frame = ByteBuffer.allocate(HEADER_SIZE + payload.length);
+        frame.putInt(payload.length).put(payload).flip();
+        return frame;
+    }
+
+    public static void writeFrame(DataOutputStream out, MessageCodec codec, Object message) throws IOException {
+        byte[] payload = encodePayload(codec, message);
+        out.writeInt(payload.length);
+        out.write(payload);
+        out.flush();
+    }
+
+    // Подготовленное сообщение уже закодировано, остальные кодируются здесь
+    private static byte[] encodePayload(MessageCodec codec, Object message) throws IOException {
+        if (message instanceof PreparedMessage) {
+            return ((PreparedMessage) message).payload(codec);
+        }
+        return codec.encode(message);
+    }
+
+    public static Object readFrame(DataInputStream in, MessageCodec codec) throws IOException, ClassNotFoundException {
+        return readFrame(in, codec, MAX_FRAME_SIZE);
+    }
+
+    // maxLength - предел для тела кадра, например меньший до авторизации клиента
+    public static Object readFrame(DataInputStream in, MessageCodec codec, int maxLength)
+            throws IOException, ClassNotFoundException {
+        int length = in.readInt();
+        checkLength(length, maxLength);
+        byte[] payload = new byte[length];
+        in.readFully(payload);
+        return codec.decode(payload, 0, length);
+    }
+
+    public static void checkLength(int length) throws IOException {
+        checkLength(length, MAX_FRAME_SIZE);
+    }
+
+    public static void checkLength(int length, int maxLength) throws IOException {
+        if (length < 0 || length > Math.min(maxLength, MAX_FRAME_SIZE)) {
+            throw new StreamCorruptedException("Недопустимая длина кадра: " + length);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package org.example.network;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+
+// Согласование версии протокола при подключении.
+// Клиент отправляет MAGIC и максимальную поддерживаемую версию, сервер отвечает MAGIC и выбранной версией.
+public final class Handshake {
+    public static final int MAGIC = 0x4C414238; // "LAB8"
+    public static final int SIZE = 8;
+    public static final int VERSION_SERIALIZATION = 1;
+    public static final int VERSION_BINARY = 2;
+    public static final int MAX_VERSION = VERSION_BINARY;
+
+    private Handshake() {
+    }
+
+    // Версию можно понизить свойством -Dprotocol.version=1 (например, для отладки)
+    public static int preferredVersion() {
+        String value = System.getProperty("protocol.version");
+        if (value == null || value.isBlank()) {
+            return MAX_VERSION;
+        }
+        try {
+            return Math.max(VERSION_SERIALIZATION, Math.min(MAX_VERSION, Integer.parseInt(value.trim())));
+        } catch (NumberFormatException e) {
+            System.err.println("Неверное значение protocol.version=" + value + ", используется " + MAX_VERSION);
+            return MAX_VERSION;
+        }
+    }
+
+    public static int negotiateAsClient(DataInputStream in, DataOutputStream out, int preferredVersion) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(preferredVersion);
+        out.flush();
+
+        int magic = in.readInt();
+        int version = in.readInt();
+        if (magic != MAGIC || version < VERSION_SERIALIZATION || version > preferredVersion) {
+            throw new StreamCorruptedException("Сервер ответил неверным приветствием");
+        }
+        return version;
+    }
+
+    public static int negotiateAsServer(DataInputStream in, DataOutputStream out) throws IOException {
+        int version = chooseVersion(in.readInt(), in.readInt());
+        out.writeInt(MAGIC);
+        out.writeInt(version);
+        out.flush();
+        return version;
+    }
+
+    public static int chooseVersion(int magic, int offeredVersion) throws IOException {
+        if (magic != MAGIC || offeredVersion < VERSION_SERIALIZATION) {
+            throw new StreamCorruptedException("Клиент прислал неверное приветствие");
+        }
+        return Math.min(offeredVersion, MAX_VERSION);
+    }
+
+    public static ByteBuffer encodeReply(int version) {
+        ByteBuffer reply = ByteBuffer.allocate(SIZE);
+        reply.putInt(MAGIC).putInt(version).flip();
+        return reply;
+    }
+}
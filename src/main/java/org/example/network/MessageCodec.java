@@ -0,0 +1,19 @@
+package org.example.network;
+
+import java.io.IOException;
+
+// Преобразование сообщения в тело кадра и обратно.
+// Конкретный кодек выбирается по версии протокола, согласованной при подключении.
+public interface MessageCodec {
+    byte[] encode(Object message) throws IOException;
+
+    Object decode(byte[] payload, int offset, int length) throws IOException, ClassNotFoundException;
+
+    static MessageCodec forVersion(int version) {
+        switch (version) {
+            case Handshake.VERSION_SERIALIZATION: return SerializationCodec.INSTANCE;
+            case Handshake.VERSION_BINARY: return BinaryCodec.INSTANCE;
+            default: throw new IllegalArgumentException("Неподдерживаемая версия протокола: " + version);
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package org.example.network;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Сообщение, которое рассылается многим клиентам: тело кадра кодируется один раз
+// для каждого кодека и затем отправляется всем соединениям с этой версией протокола
+public final class PreparedMessage {
+    private final Object message;
+    private final Map<MessageCodec, byte[]> payloads = new ConcurrentHashMap<>(2);
+
+    public PreparedMessage(Object message) {
+        this.message = message;
+    }
+
+    public Object getMessage() {
+        return message;
+    }
+
+    public byte[] payload(MessageCodec codec) throws IOException {
+        byte[] payload = payloads.get(codec);
+        if (payload == null) {
+            // Два потока могут закодировать одновременно, результат одинаковый
+            payload = codec.encode(message);
+            payloads.putIfAbsent(codec, payload);
+        }
+        return payload;
+    }
+}
@@ -0,0 +1,173 @@
+package org.example.network;
+
+import org.example.data.Coordinates;
+import org.example.data.Organization;
+import org.example.data.Product;
+import org.example.data.UnitOfMeasure;
+
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Двоичное представление Product/Organization/Coordinates.
+// Необязательные поля отмечаются битами в байте флагов, часовые пояса в списке
+// передаются один раз и дальше ссылаются по номеру.
+public final class ProductCodec {
+    private static final int HAS_PRICE = 1;
+    private static final int HAS_MANUFACTURE_COST = 1 << 1;
+    private static final int HAS_MANUFACTURER = 1 << 2;
+    private static final int HAS_CREATION_DATE = 1 << 3;
+    private static final UnitOfMeasure[] UNITS = UnitOfMeasure.values();
+
+    private ProductCodec() {
+    }
+
+    public static void writeProducts(DataOutput out, Collection<Product> products) throws IOException {
+        BinaryIO.writeVarInt(out, products.size());
+        Map<ZoneId, Integer> zones = new HashMap<>();
+        for (Product product : products) {
+            writeProduct(out, product, zones);
+        }
+    }
+
+    public static List<Product> readProducts(DataInputStream in) throws IOException {
+        int size = BinaryIO.readVarInt(in);
+        BinaryIO.checkSize(in, size, "Недопустимый размер списка");
+        List<Product> products = new ArrayList<>(size);
+        List<ZoneId> zones = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            products.add(readProduct(in, zones));
+        }
+        return products;
+    }
+
+    public static void writeProduct(DataOutput out, Product product) throws IOException {
+        writeProduct(out, product, new HashMap<>());
+    }
+
+    public static Product readProduct(DataInputStream in) throws IOException {
+        return readProduct(in, new ArrayList<>());
+    }
+
+    private static void writeProduct(DataOutput out, Product product, Map<ZoneId, Integer> zones) throws IOException {
+        int flags = 0;
+        if (product.getPrice() != null) flags |= HAS_PRICE;
+        if (product.getManufactureCost() != null) flags |= HAS_MANUFACTURE_COST;
+        if (product.getManufacturer() != null) flags |= HAS_MANUFACTURER;
+        if (product.getCreationDate() != null) flags |= HAS_CREATION_DATE;
+        out.writeByte(flags);
+
+        BinaryIO.writeVarLong(out, product.getId() != null ? product.getId() : 0L);
+        BinaryIO.writeString(out, product.getName());
+        BinaryIO.writeSignedVarLong(out, product.getCoordinates().getX());
+        out.writeFloat(product.getCoordinates().getY());
+        if (product.getCreationDate() != null) {
+            writeDate(out, product.getCreationDate(), zones);
+        }
+        if (product.getPrice() != null) {
+            BinaryIO.writeSignedVarLong(out, product.getPrice());
+        }
+        BinaryIO.writeString(out, product.getPartNumber());
+        if (product.getManufactureCost() != null) {
+            out.writeFloat(product.getManufactureCost());
+        }
+        out.writeByte(product.getUnitOfMeasure().ordinal());
+        if (product.getManufacturer() != null) {
+            writeOrganization(out, product.getManufacturer());
+        }
+        BinaryIO.writeVarInt(out, product.getCreatorId());
+    }
+
+    private static Product readProduct(DataInputStream in, List<ZoneId> zones) throws IOException {
+        int flags = in.readUnsignedByte();
+        long id = BinaryIO.readVarLong(in);
+        String name = BinaryIO.readString(in);
+        Coordinates coordinates;
+        try {
+            coordinates = new Coordinates(BinaryIO.readSignedVarLong(in), in.readFloat());
+        } catch (IllegalArgumentException e) {
+            throw new StreamCorruptedException("Некорректные координаты: " + e.getMessage());
+        }
+        ZonedDateTime creationDate = (flags & HAS_CREATION_DATE) != 0 ? readDate(in, zones) : null;
+        Long price = (flags & HAS_PRICE) != 0 ? BinaryIO.readSignedVarLong(in) : null;
+        String partNumber = BinaryIO.readString(in);
+        Float manufactureCost = (flags & HAS_MANUFACTURE_COST) != 0 ? in.readFloat() : null;
+        int unit = in.readUnsignedByte();
+        if (unit >= UNITS.length) {
+            throw new StreamCorruptedException("Неизвестная единица измерения: " + unit);
+        }
+        Organization manufacturer = (flags & HAS_MANUFACTURER) != 0 ? readOrganization(in) : null;
+        int creatorId = BinaryIO.readVarInt(in);
+        return new Product(id, name, coordinates, creationDate, price, partNumber,
+                manufactureCost, UNITS[unit], manufacturer, creatorId);
+    }
+
+    public static void writeOrganization(DataOutput out, Organization organization) throws IOException {
+        BinaryIO.writeVarLong(out, organization.getId());
+        BinaryIO.writeString(out, organization.getName());
+        BinaryIO.writeString(out, organization.getFullName());
+        BinaryIO.writeVarLong(out, organization.getEmployeesCount());
+        BinaryIO.writeVarInt(out, organization.getCreatorId());
+    }
+
+    public static Organization readOrganization(DataInputStream in) throws IOException {
+        long id = BinaryIO.readVarLong(in);
+        String name = BinaryIO.readString(in);
+        String fullName = BinaryIO.readString(in);
+        long employeesCount = BinaryIO.readVarLong(in);
+        int creatorId = BinaryIO.readVarInt(in);
+        try {
+            return new Organization(id, name, fullName, employeesCount, creatorId);
+        } catch (IllegalArgumentException e) {
+            throw new StreamCorruptedException("Некорректная организация: " + e.getMessage());
+        }
+    }
+
+    private static void writeDate(DataOutput out, ZonedDateTime date, Map<ZoneId, Integer> zones) throws IOException {
+        Instant instant = date.toInstant();
+        BinaryIO.writeSignedVarLong(out, instant.getEpochSecond());
+        BinaryIO.writeVarInt(out, instant.getNano());
+        Integer zoneIndex = zones.get(date.getZone());
+        if (zoneIndex != null) {
+            BinaryIO.writeVarInt(out, zoneIndex + 1);
+        } else {
+            zones.put(date.getZone(), zones.size());
+            BinaryIO.writeVarInt(out, 0);
+            BinaryIO.writeString(out, date.getZone().getId());
+        }
+    }
+
+    private static ZonedDateTime readDate(DataInputStream in, List<ZoneId> zones) throws IOException {
+        long seconds = BinaryIO.readSignedVarLong(in);
+        int nanos = BinaryIO.readVarInt(in);
+        int zoneRef = BinaryIO.readVarInt(in);
+        String zoneId = zoneRef == 0 ? BinaryIO.readString(in) : null;
+        try {
+            ZoneId zone;
+            if (zoneRef == 0) {
+                if (zoneId == null) {
+                    throw new DateTimeException("часовой пояс не указан");
+                }
+                zone = ZoneId.of(zoneId);
+                zones.add(zone);
+            } else if (zoneRef > 0 && zoneRef <= zones.size()) {
+                zone = zones.get(zoneRef - 1);
+            } else {
+                throw new StreamCorruptedException("Неизвестная ссылка на часовой пояс: " + zoneRef);
+            }
+            return Instant.ofEpochSecond(seconds, nanos).atZone(zone);
+        } catch (DateTimeException | ArithmeticException e) {
+            throw new StreamCorruptedException("Некорректная дата: " + e.getMessage());
+        }
+    }
+}
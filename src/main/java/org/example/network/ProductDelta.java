@@ -0,0 +1,55 @@
+package org.example.network;
+
+import org.example.data.Product;
+
+import java.io.Serializable;
+import java.util.List;
+
+// Изменения коллекции между версиями: вставленные/измененные продукты и id удаленных.
+// При full = true в upserts лежит вся коллекция, а removedIds пуст.
+public class ProductDelta implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private final long epoch;
+    private final long version;
+    private final boolean full;
+    private final List<Product> upserts;
+    private final List<Long> removedIds;
+
+    public ProductDelta(long epoch, long version, boolean full, List<Product> upserts, List<Long> removedIds) {
+        this.epoch = epoch;
+        this.version = version;
+        this.full = full;
+        this.upserts = upserts;
+        this.removedIds = removedIds;
+    }
+
+    public long getEpoch() {
+        return epoch;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public boolean isFull() {
+        return full;
+    }
+
+    public List<Product> getUpserts() {
+        return upserts;
+    }
+
+    public List<Long> getRemovedIds() {
+        return removedIds;
+    }
+
+    public boolean isEmpty() {
+        return !full && upserts.isEmpty() && removedIds.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "ProductDelta{epoch=" + epoch + ", version=" + version + ", full=" + full +
+                ", upserts=" + upserts.size() + ", removed=" + removedIds.size() + "}";
+    }
+}
@@ -0,0 +1,15 @@
+package org.example.network;
+
+// Запрос текущего списка продуктов; ответ - Response с коллекцией в data
+public class ProductsRequest extends Request {
+    private static final long serialVersionUID = 1L;
+
+    public ProductsRequest() {
+        super("GET_PRODUCTS");
+    }
+
+    @Override
+    public String toString() {
+        return "ProductsRequest{correlationId=" + getCorrelationId() + ", timestamp=" + getTimestamp() + "}";
+    }
+}
@@ -6,6 +6,8 @@ public abstract class Request implements Serializable {
     private static final long serialVersionUID = 1L;
     private final String type;
     private final long timestamp;
+    // Номер запроса в соединении: по нему клиент сопоставляет ответ (0 - без сопоставления)
+    private long correlationId;
 
     public Request(String type) {
         this.type = type;
@@ -19,4 +21,12 @@ public abstract class Request implements Serializable {
     public long getTimestamp() {
         return timestamp;
     }
+
+    public long getCorrelationId() {
+        return correlationId;
+    }
+
+    public void setCorrelationId(long correlationId) {
+        this.correlationId = correlationId;
+    }
 }
\ No newline at end of file
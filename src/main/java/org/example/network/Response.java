@@ -8,6 +8,8 @@ public class Response implements Serializable {
     private final String message;
     private final Object data;
     private final long timestamp;
+    // Копия correlationId запроса, на который дан ответ
+    private long correlationId;
 
     public Response(boolean success, String message) {
         this(success, message, null);
@@ -36,9 +38,17 @@ public class Response implements Serializable {
         return timestamp;
     }
 
+    public long getCorrelationId() {
+        return correlationId;
+    }
+
+    public void setCorrelationId(long correlationId) {
+        this.correlationId = correlationId;
+    }
+
     @Override
     public String toString() {
         return "Response{success=" + success + ", message='" + message +
-                "', timestamp=" + timestamp + "}";
+                "', correlationId=" + correlationId + ", timestamp=" + timestamp + "}";
     }
 }
\ No newline at end of file
@@ -0,0 +1,22 @@
+package org.example.network;
+
+// Продолжение сессии на новом соединении по токену, выданному при входе:
+// после переподключения клиенту не нужно заново отправлять логин и пароль
+public class ResumeRequest extends Request {
+    private static final long serialVersionUID = 1L;
+    private final String token;
+
+    public ResumeRequest(String token) {
+        super("RESUME");
+        this.token = token;
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    @Override
+    public String toString() {
+        return "ResumeRequest{correlationId=" + getCorrelationId() + ", timestamp=" + getTimestamp() + "}";
+    }
+}
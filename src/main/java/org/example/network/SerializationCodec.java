@@ -0,0 +1,31 @@
+package org.example.network;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+// Версия протокола 1: стандартная сериализация Java, по объекту на кадр
+public final class SerializationCodec implements MessageCodec {
+    public static final SerializationCodec INSTANCE = new SerializationCodec();
+
+    private SerializationCodec() {
+    }
+
+    @Override
+    public byte[] encode(Object message) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(message);
+        }
+        return bytes.toByteArray();
+    }
+
+    @Override
+    public Object decode(byte[] payload, int offset, int length) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(payload, offset, length))) {
+            return in.readObject();
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package org.example.network;
+
+import java.io.Serializable;
+
+// Ответ на успешный вход, регистрацию или возобновление сессии: id пользователя и токен,
+// который клиент передает в каждой команде вместо логина и хэша пароля
+public class SessionTicket implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private final int userId;
+    private final String token;
+
+    public SessionTicket(int userId, String token) {
+        this.userId = userId;
+        this.token = token;
+    }
+
+    public int getUserId() {
+        return userId;
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    @Override
+    public String toString() {
+        return "SessionTicket{userId=" + userId + "}";
+    }
+}
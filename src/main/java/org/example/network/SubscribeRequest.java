@@ -0,0 +1,29 @@
+package org.example.network;
+
+// Подписка на изменения коллекции: в ответ приходит Response с изменениями после sinceVersion,
+// дальше сервер сам присылает ProductDelta (без correlationId) по мере изменений.
+public class SubscribeRequest extends Request {
+    private static final long serialVersionUID = 1L;
+    private final long epoch;
+    private final long sinceVersion;
+
+    public SubscribeRequest(long epoch, long sinceVersion) {
+        super("SUBSCRIBE");
+        this.epoch = epoch;
+        this.sinceVersion = sinceVersion;
+    }
+
+    public long getEpoch() {
+        return epoch;
+    }
+
+    public long getSinceVersion() {
+        return sinceVersion;
+    }
+
+    @Override
+    public String toString() {
+        return "SubscribeRequest{epoch=" + epoch + ", sinceVersion=" + sinceVersion +
+                ", correlationId=" + getCorrelationId() + "}";
+    }
+}
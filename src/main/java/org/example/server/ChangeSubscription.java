@@ -0,0 +1,160 @@
+package org.example.server;
+
+import org.example.management.CollectionManager;
+import org.example.network.PreparedMessage;
+import org.example.network.ProductDelta;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+// Подписка одного клиента на изменения коллекции.
+// Изменения, пришедшие в течение окна, объединяются в один ProductDelta.
+// Поток рассылки только собирает изменения, а отправляет их отдельный поток, поэтому
+// зависший клиент не задерживает остальных. Пока клиент не принял предыдущую отправку,
+// новые изменения ему не копятся: следующая отправка содержит все сразу от его версии
+// (или полный снимок, если журнал изменений уже усечен)
+public class ChangeSubscription {
+    private static final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "change-push");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final AtomicInteger senderCounter = new AtomicInteger();
+    // Запись в сокет классического режима блокируется, пока клиент не читает:
+    // такой клиент занимает только свой поток отправки
+    private static final ExecutorService senders = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "change-push-send-" + senderCounter.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Подписчики с одинаковой версией получают одну и ту же дельту: она считается
+    // и кодируется один раз на версию коллекции, а не для каждого клиента
+    private static final int MAX_PREPARED = 256;
+    private static final ConcurrentHashMap<DeltaKey, PreparedMessage> prepared = new ConcurrentHashMap<>();
+
+    private final CollectionManager collectionManager;
+    private final Consumer<Object> sender;
+    private final BooleanSupplier backlogged;
+    private final long windowMs;
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+    private final AtomicBoolean sending = new AtomicBoolean(false);
+    private final LongConsumer listener = version -> scheduleFlush();
+    private long epoch;
+    private long sentVersion;
+    private volatile boolean active;
+
+    private static final class DeltaKey {
+        final CollectionManager manager;
+        final long epoch;
+        final long sinceVersion;
+        final long version;
+
+        DeltaKey(CollectionManager manager, long epoch, long sinceVersion, long version) {
+            this.manager = manager;
+            this.epoch = epoch;
+            this.sinceVersion = sinceVersion;
+            this.version = version;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof DeltaKey)) {
+                return false;
+            }
+            DeltaKey other = (DeltaKey) o;
+            return manager == other.manager && epoch == other.epoch
+                    && sinceVersion == other.sinceVersion && version == other.version;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(System.identityHashCode(manager), epoch, sinceVersion, version);
+        }
+    }
+
+    // backlogged сообщает, что у соединения уже скопились неотправленные данные
+    public ChangeSubscription(CollectionManager collectionManager, Consumer<Object> sender,
+                              BooleanSupplier backlogged) {
+        this.collectionManager = collectionManager;
+        this.sender = sender;
+        this.backlogged = backlogged;
+        this.windowMs = ServerConfig.getPushWindowMs();
+    }
+
+    // Регистрирует слушателя и отправляет изменения после версии клиента.
+    // Слушатель ставится раньше расчета, чтобы не пропустить изменение между ними.
+    // Рассылка, отправленная раньше ответа, клиентом отбрасывается по номеру версии
+    public synchronized void start(long clientEpoch, long sinceVersion, Consumer<ProductDelta> initialReply) {
+        if (!active) {
+            active = true;
+            collectionManager.addChangeListener(listener);
+        }
+        ProductDelta delta = collectionManager.getChangesSince(clientEpoch, sinceVersion);
+        epoch = delta.getEpoch();
+        sentVersion = delta.getVersion();
+        initialReply.accept(delta);
+    }
+
+    public void cancel() {
+        active = false;
+        collectionManager.removeChangeListener(listener);
+    }
+
+    private void scheduleFlush() {
+        if (active && flushScheduled.compareAndSet(false, true)) {
+            scheduler.schedule(this::flush, windowMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private synchronized void flush() {
+        flushScheduled.set(false);
+        if (!active || sentVersion >= collectionManager.getVersion()) {
+            return;
+        }
+        if (sending.get() || backlogged.getAsBoolean()) {
+            // Клиент не успевает: проверим снова через окно, изменения пока объединяются
+            scheduleFlush();
+            return;
+        }
+        PreparedMessage message = prepare(epoch, sentVersion);
+        ProductDelta delta = (ProductDelta) message.getMessage();
+        if (delta.isEmpty()) {
+            return;
+        }
+        epoch = delta.getEpoch();
+        sentVersion = delta.getVersion();
+        sending.set(true);
+        senders.execute(() -> {
+            try {
+                sender.accept(message);
+            } finally {
+                sending.set(false);
+            }
+        });
+    }
+
+    private PreparedMessage prepare(long fromEpoch, long sinceVersion) {
+        DeltaKey key = new DeltaKey(collectionManager, fromEpoch, sinceVersion, collectionManager.getVersion());
+        PreparedMessage message = prepared.get(key);
+        if (message != null) {
+            return message;
+        }
+        ProductDelta delta = collectionManager.getChangesSince(fromEpoch, sinceVersion);
+        message = new PreparedMessage(delta);
+        if (prepared.size() >= MAX_PREPARED) {
+            prepared.clear();
+        }
+        // Ключ - версия, до которой дельта фактически посчитана
+        prepared.putIfAbsent(new DeltaKey(collectionManager, fromEpoch, sinceVersion, delta.getVersion()), message);
+        return message;
+    }
+}
@@ -0,0 +1,201 @@
+package org.example.server;
+
+import org.example.management.CollectionManager;
+import org.example.management.CommandManager;
+import org.example.management.DatabaseManager;
+import org.example.network.FrameCodec;
+import org.example.network.Handshake;
+import org.example.network.MessageCodec;
+import org.example.network.Response;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Состояние одного соединения неблокирующего сервера.
+// Простаивающее соединение не держит собственных буферов: чтение идет в общий буфер потока
+// ввода-вывода, а отдельный буфер выделяется только под недочитанный кадр. Этот буфер растет
+// вдвое по мере прихода данных, а не сразу до длины из заголовка, поэтому заголовок без тела
+// не заставляет сервер выделять память под весь заявленный кадр.
+class NioConnection {
+    private static final int MIN_PENDING_SIZE = 4 * 1024;
+    // Больше стольких неотправленных байт рассылка изменений этому клиенту откладывается
+    private static final long PUSH_BACKLOG_LIMIT = 1024 * 1024;
+
+    private final SocketChannel channel;
+    private final NioServer.IoWorker worker;
+    private final ExecutorService executor;
+    private final RequestProcessor processor;
+    private final Queue<ByteBuffer> writeQueue = new ConcurrentLinkedQueue<>();
+    private final AtomicLong queuedBytes = new AtomicLong();
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+    private final String address;
+    private SelectionKey key;
+    private ByteBuffer pending;
+    // Кодек появляется после согласования версии протокола
+    private volatile MessageCodec codec;
+    // Запросы одного клиента разбираются по порядку (авторизация раньше команд)
+    private CompletableFuture<Void> tail = CompletableFuture.completedFuture(null);
+
+    NioConnection(SocketChannel channel, NioServer.IoWorker worker, ExecutorService executor,
+                  CollectionManager collectionManager, CommandManager commandManager,
+                  DatabaseManager databaseManager) {
+        this.channel = channel;
+        this.worker = worker;
+        this.executor = executor;
+        this.address = String.valueOf(channel.socket().getInetAddress());
+        this.processor = new RequestProcessor(collectionManager, commandManager, databaseManager,
+                executor, this::send, () -> queuedBytes.get() > PUSH_BACKLOG_LIMIT);
+    }
+
+    void attach(SelectionKey key) {
+        this.key = key;
+    }
+
+    SelectionKey getKey() {
+        return key;
+    }
+
+    // Вызывается только потоком ввода-вывода
+    void onReadable(ByteBuffer scratch) throws IOException {
+        ByteBuffer buffer = pending != null ? pending : scratch;
+        try {
+            int read = channel.read(buffer);
+            if (read < 0) {
+                close();
+                return;
+            }
+            buffer.flip();
+            drainFrames(buffer);
+
+            if (!buffer.hasRemaining()) {
+                pending = null;
+                return;
+            }
+            int needed = codec == null ? Handshake.SIZE : FrameCodec.HEADER_SIZE;
+            if (codec != null && buffer.remaining() >= FrameCodec.HEADER_SIZE) {
+                needed += buffer.getInt(buffer.position());
+            }
+            // Недочитанная часть всегда меньше needed, значит буфер вырастет хотя бы на байт
+            if (buffer == pending && pending.capacity() > buffer.remaining()) {
+                pending.compact();
+            } else {
+                int size = (int) Math.min(needed, Math.max(MIN_PENDING_SIZE, 2L * buffer.remaining()));
+                ByteBuffer rest = ByteBuffer.allocate(size);
+                rest.put(buffer);
+                pending = rest;
+            }
+        } finally {
+            scratch.clear();
+        }
+    }
+
+    private void drainFrames(ByteBuffer buffer) throws IOException {
+        if (codec == null) {
+            if (buffer.remaining() < Handshake.SIZE) {
+                return;
+            }
+            int version = Handshake.chooseVersion(buffer.getInt(), buffer.getInt());
+            enqueue(Handshake.encodeReply(version));
+            codec = MessageCodec.forVersion(version);
+            worker.requestWrite(this);
+        }
+        while (buffer.remaining() >= FrameCodec.HEADER_SIZE) {
+            int length = buffer.getInt(buffer.position());
+            FrameCodec.checkLength(length, maxFrameLength());
+            if (buffer.remaining() < FrameCodec.HEADER_SIZE + length) {
+                return;
+            }
+            buffer.position(buffer.position() + FrameCodec.HEADER_SIZE);
+            byte[] payload = new byte[length];
+            buffer.get(payload);
+            dispatch(payload);
+        }
+    }
+
+    // До авторизации кадр ограничен небольшим размером. Запросы разбираются в пуле, поэтому
+    // кадр, пришедший сразу за запросом входа, еще может проверяться по анонимному пределу
+    private int maxFrameLength() {
+        return processor.getCurrentUser() != null
+                ? FrameCodec.MAX_FRAME_SIZE : ServerConfig.getMaxUnauthenticatedFrame();
+    }
+
+    private void dispatch(byte[] payload) {
+        tail = tail.thenRunAsync(() -> {
+            if (closed.get()) {
+                return;
+            }
+            try {
+                processor.process(codec.decode(payload, 0, payload.length));
+            } catch (ClassNotFoundException | IOException e) {
+                send(new Response(false, "Ошибка десериализации: " + e.getMessage()));
+            } catch (RuntimeException e) {
+                send(new Response(false, "Ошибка обработки запроса: " + e.getMessage()));
+            }
+        }, executor);
+    }
+
+    // Может вызываться из любого потока: кадр ставится в очередь, запись выполнит поток ввода-вывода
+    void send(Object message) {
+        if (closed.get()) {
+            return;
+        }
+        try {
+            enqueue(FrameCodec.encodeFrame(codec, message));
+            worker.requestWrite(this);
+        } catch (IOException e) {
+            System.err.println("Ошибка отправки ответа: " + e.getMessage());
+        }
+    }
+
+    private void enqueue(ByteBuffer frame) {
+        queuedBytes.addAndGet(frame.remaining());
+        writeQueue.add(frame);
+    }
+
+    // Вызывается только потоком ввода-вывода
+    void onWritable() throws IOException {
+        ByteBuffer buffer;
+        while ((buffer = writeQueue.peek()) != null) {
+            queuedBytes.addAndGet(-channel.write(buffer));
+            if (buffer.hasRemaining()) {
+                return;
+            }
+            writeQueue.poll();
+        }
+        key.interestOps(SelectionKey.OP_READ);
+        // Кадр мог появиться после проверки очереди
+        if (!writeQueue.isEmpty()) {
+            key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+    }
+
+    boolean hasPendingWrites() {
+        return !writeQueue.isEmpty();
+    }
+
+    void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        processor.release();
+        if (key != null) {
+            key.cancel();
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("Ошибка при закрытии соединения: " + e.getMessage());
+        }
+        writeQueue.clear();
+        pending = null;
+        System.out.println("Клиент отключен: " + address);
+    }
+}
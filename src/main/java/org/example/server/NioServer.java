@@ -0,0 +1,191 @@
+package org.example.server;
+
+import org.example.management.CollectionManager;
+import org.example.management.CommandManager;
+import org.example.management.DatabaseManager;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Неблокирующий сервер: один поток принимает подключения, небольшой пул потоков
+// с собственными селекторами читает и пишет кадры, команды выполняются в общем пуле.
+public class NioServer {
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private final int port;
+    private final CollectionManager collectionManager;
+    private final CommandManager commandManager;
+    private final DatabaseManager databaseManager;
+    private final ExecutorService executor;
+    private final IoWorker[] workers;
+    private final AtomicBoolean isRunning = new AtomicBoolean(false);
+    private Selector acceptSelector;
+    private ServerSocketChannel serverChannel;
+
+    public NioServer(int port, CollectionManager collectionManager, CommandManager commandManager,
+                     DatabaseManager databaseManager, ExecutorService executor, int ioThreads) {
+        this.port = port;
+        this.collectionManager = collectionManager;
+        this.commandManager = commandManager;
+        this.databaseManager = databaseManager;
+        this.executor = executor;
+        this.workers = new IoWorker[Math.max(1, ioThreads)];
+    }
+
+    // Блокирует вызывающий поток до остановки сервера
+    public void start() throws IOException {
+        if (!isRunning.compareAndSet(false, true)) {
+            System.out.println("Сервер уже запущен");
+            return;
+        }
+
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new IoWorker(i);
+            workers[i].start();
+        }
+
+        acceptSelector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        serverChannel.bind(new InetSocketAddress(port), 1024);
+        serverChannel.configureBlocking(false);
+        serverChannel.register(acceptSelector, SelectionKey.OP_ACCEPT);
+        System.out.println("Сервер (NIO, потоков ввода-вывода: " + workers.length + ") запущен на порту " + port);
+
+        int next = 0;
+        try {
+            while (isRunning.get()) {
+                acceptSelector.select();
+                acceptSelector.selectedKeys().clear();
+
+                SocketChannel client;
+                while ((client = serverChannel.accept()) != null) {
+                    try {
+                        client.configureBlocking(false);
+                        client.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                        System.out.println("Подключен новый клиент: " + client.socket().getInetAddress());
+                        workers[next].register(client);
+                        next = (next + 1) % workers.length;
+                    } catch (IOException e) {
+                        System.err.println("Ошибка при принятии подключения: " + e.getMessage());
+                        client.close();
+                    }
+                }
+            }
+        } catch (ClosedSelectorException e) {
+            // Селектор закрыт в stop()
+        } finally {
+            stop();
+        }
+    }
+
+    public void stop() {
+        if (!isRunning.compareAndSet(true, false)) {
+            return;
+        }
+        try {
+            if (serverChannel != null) serverChannel.close();
+            if (acceptSelector != null) acceptSelector.close();
+        } catch (IOException e) {
+            System.err.println("Ошибка при остановке сервера: " + e.getMessage());
+        }
+        for (IoWorker worker : workers) {
+            if (worker != null) worker.shutdown();
+        }
+    }
+
+    class IoWorker extends Thread {
+        private final Selector selector;
+        private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+        IoWorker(int index) throws IOException {
+            super("nio-io-" + index);
+            setDaemon(true);
+            this.selector = Selector.open();
+        }
+
+        void register(SocketChannel channel) {
+            tasks.add(() -> {
+                NioConnection connection = new NioConnection(channel, this, executor,
+                        collectionManager, commandManager, databaseManager);
+                try {
+                    connection.attach(channel.register(selector, SelectionKey.OP_READ, connection));
+                } catch (IOException e) {
+                    System.err.println("Ошибка регистрации клиента: " + e.getMessage());
+                    connection.close();
+                }
+            });
+            selector.wakeup();
+        }
+
+        void requestWrite(NioConnection connection) {
+            tasks.add(() -> {
+                SelectionKey key = connection.getKey();
+                if (key != null && key.isValid() && connection.hasPendingWrites()) {
+                    key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                }
+            });
+            selector.wakeup();
+        }
+
+        void shutdown() {
+            interrupt();
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (isRunning.get() && !isInterrupted()) {
+                    selector.select();
+
+                    Runnable task;
+                    while ((task = tasks.poll()) != null) {
+                        task.run();
+                    }
+
+                    Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                    while (it.hasNext()) {
+                        SelectionKey key = it.next();
+                        it.remove();
+                        NioConnection connection = (NioConnection) key.attachment();
+                        try {
+                            if (key.isValid() && key.isReadable()) {
+                                connection.onReadable(readBuffer);
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                connection.onWritable();
+                            }
+                        } catch (IOException e) {
+                            connection.close();
+                        }
+                    }
+                }
+            } catch (IOException | ClosedSelectorException e) {
+                System.err.println("Ошибка потока ввода-вывода " + getName() + ": " + e.getMessage());
+            } finally {
+                for (SelectionKey key : selector.keys()) {
+                    ((NioConnection) key.attachment()).close();
+                }
+                try {
+                    selector.close();
+                } catch (IOException e) {
+                    System.err.println("Ошибка при закрытии селектора: " + e.getMessage());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,272 @@
+package org.example.server;
+
+import org.example.commands.AsyncCommand;
+import org.example.management.*;
+import org.example.data.User;
+import org.example.util.HashUtil;
+import org.example.network.*;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+// Обработка запросов одного клиентского соединения, не зависящая от способа ввода-вывода
+public class RequestProcessor {
+    // Логин -> соединение, в котором пользователь сейчас работает
+    private static final ConcurrentHashMap<String, RequestProcessor> activeUsers = new ConcurrentHashMap<>();
+    private static final SessionTable sessions = new SessionTable(
+            TimeUnit.SECONDS.toMillis(Integer.getInteger("auth.sessionTtlSec", 1800)));
+
+    private final CollectionManager collectionManager;
+    private final CommandManager commandManager;
+    private final DatabaseManager databaseManager;
+    private final ExecutorService commandExecutor;
+    private final Consumer<Object> sender;
+    private volatile User currentUser;
+    // Токен сессии, которой сейчас пользуется соединение
+    private volatile String currentToken;
+    private final ChangeSubscription subscription;
+
+    // sendBacklogged сообщает, что клиент не успевает принимать данные (для рассылки изменений)
+    public RequestProcessor(CollectionManager collectionManager, CommandManager commandManager,
+                            DatabaseManager databaseManager, ExecutorService commandExecutor,
+                            Consumer<Object> sender, BooleanSupplier sendBacklogged) {
+        this.collectionManager = collectionManager;
+        this.commandManager = commandManager;
+        this.databaseManager = databaseManager;
+        this.commandExecutor = commandExecutor;
+        this.sender = sender;
+        this.subscription = new ChangeSubscription(collectionManager, sender, sendBacklogged);
+    }
+
+    public void process(Object request) {
+        if (request instanceof AuthRequest) {
+            handleAuthRequest((AuthRequest) request);
+        } else if (request instanceof ResumeRequest) {
+            handleResumeRequest((ResumeRequest) request);
+        } else if (request instanceof CommandRequest) {
+            handleCommandRequest((CommandRequest) request);
+        } else if (request instanceof ProductsRequest) {
+            handleProductsRequest((ProductsRequest) request);
+        } else if (request instanceof ChangesRequest) {
+            handleChangesRequest((ChangesRequest) request);
+        } else if (request instanceof SubscribeRequest) {
+            handleSubscribeRequest((SubscribeRequest) request);
+        } else if (request instanceof String && "GET_PRODUCTS".equals(request)) {
+            handleGetProductsRequest();
+        } else {
+            sendResponse(new Response(false, "Неизвестный тип запроса"));
+        }
+    }
+
+    private void handleAuthRequest(AuthRequest authRequest) {
+        try {
+            String username = authRequest.getUsername();
+            String password = authRequest.getPassword();
+
+            if (username == null || password == null || username.isEmpty() || password.isEmpty()) {
+                reply(authRequest, new Response(false, "Логин и пароль не могут быть пустыми"));
+                return;
+            }
+
+            // Обработка регистрации
+            if (authRequest.isRegistration()) {
+                // Проверяем существование пользователя
+                User existingUser = databaseManager.getUserByUsername(username);
+                if (existingUser != null) {
+                    reply(authRequest, new Response(false, "Пользователь с таким логином уже существует"));
+                    return;
+                }
+
+                // Регистрируем нового пользователя
+                User newUser = databaseManager.registerUser(username, HashUtil.sha256(password));
+                if (newUser != null) {
+                    // АВТОМАТИЧЕСКИ АВТОРИЗУЕМ ПОЛЬЗОВАТЕЛЯ ПОСЛЕ РЕГИСТРАЦИИ
+                    if (!claimUser(username)) {
+                        reply(authRequest, new Response(false, "Пользователь уже авторизован в системе"));
+                        return;
+                    }
+                    String token = sessions.issue(newUser);
+                    switchSession(newUser, token);
+                    reply(authRequest, new Response(true, "Регистрация успешна! Добро пожаловать, " + username,
+                            new SessionTicket(newUser.getId(), token)));
+                } else {
+                    reply(authRequest, new Response(false, "Ошибка при регистрации пользователя"));
+                }
+                return;
+            }
+
+            // Обработка входа (существующая логика)
+            User user = databaseManager.authenticateUser(username, HashUtil.sha256(password));
+            if (user != null) {
+                if (!claimUser(username)) {
+                    reply(authRequest, new Response(false, "Пользователь уже авторизован в системе"));
+                    return;
+                }
+
+                String token = sessions.issue(user);
+                switchSession(user, token);
+                // ОТПРАВЛЯЕМ ID ПОЛЬЗОВАТЕЛЯ И ТОКЕН СЕССИИ В data
+                reply(authRequest, new Response(true, "Авторизация успешна. Добро пожаловать, " + username,
+                        new SessionTicket(user.getId(), token)));
+                System.out.println("Пользователь авторизован: " + username);
+            } else {
+                reply(authRequest, new Response(false, "Неверный логин или пароль"));
+            }
+        } catch (Exception e) {
+            reply(authRequest, new Response(false, "Ошибка авторизации: " + e.getMessage()));
+        }
+    }
+
+    // Переподключившийся клиент продолжает сессию: соединение получает пользователя по токену
+    private void handleResumeRequest(ResumeRequest resumeRequest) {
+        User user = sessions.resolve(resumeRequest.getToken());
+        if (user == null) {
+            reply(resumeRequest, new Response(false, "Сессия истекла, требуется вход"));
+            return;
+        }
+        // Старое соединение могло еще не закрыться: пользователь теперь работает в этом,
+        // а старое перестает принимать команды и получать изменения
+        RequestProcessor previous = activeUsers.put(user.getUsername(), this);
+        if (previous != null && previous != this) {
+            previous.retire();
+        }
+        switchSession(user, resumeRequest.getToken());
+        reply(resumeRequest, new Response(true, "Сессия продолжена, " + user.getUsername(),
+                new SessionTicket(user.getId(), resumeRequest.getToken())));
+        System.out.println("Сессия продолжена: " + user.getUsername());
+    }
+
+    private void handleCommandRequest(CommandRequest commandRequest) {
+        User user = currentUser;
+        // Проверяем авторизацию
+        if (user == null) {
+            reply(commandRequest, new Response(false, "Требуется авторизация"));
+            return;
+        }
+
+        // Токен должен принадлежать пользователю этого соединения
+        User sessionUser = sessions.resolve(commandRequest.getToken());
+        if (sessionUser == null || sessionUser.getId() != user.getId()) {
+            reply(commandRequest, new Response(false, "Ошибка аутентификации"));
+            return;
+        }
+
+        // Явный выход: токен больше не продолжит сессию
+        if ("exit".equalsIgnoreCase(commandRequest.getCommand())) {
+            sessions.revoke(commandRequest.getToken());
+            currentToken = null;
+        }
+
+        // Ответ отправляется, когда команда завершится: обычные команды выполняются в пуле
+        // потоков, асинхронные ждут БД, не занимая поток. Очередность писателей задает CommandManager
+        commandManager.executeCommandAsync(commandRequest.getCommand(), commandRequest.getArgs(), user, commandExecutor)
+                .whenComplete((result, error) -> {
+                    if (error != null) {
+                        reply(commandRequest, new Response(false,
+                                "Ошибка выполнения команды: " + AsyncCommand.unwrap(error).getMessage()));
+                    } else {
+                        reply(commandRequest, new Response(true, result));
+                    }
+                });
+    }
+
+    private void handleProductsRequest(ProductsRequest productsRequest) {
+        if (currentUser == null) {
+            reply(productsRequest, new Response(false, "Требуется авторизация"));
+            return;
+        }
+        reply(productsRequest, new Response(true, "", collectionManager.getCollection()));
+    }
+
+    // Только изменения после версии клиента вместо полного списка
+    private void handleChangesRequest(ChangesRequest changesRequest) {
+        if (currentUser == null) {
+            reply(changesRequest, new Response(false, "Требуется авторизация"));
+            return;
+        }
+        ProductDelta delta = collectionManager.getChangesSince(changesRequest.getEpoch(), changesRequest.getSinceVersion());
+        reply(changesRequest, new Response(true, "", delta));
+    }
+
+    // Подписка: ответ содержит изменения после версии клиента, дальнейшие приходят без запроса
+    private void handleSubscribeRequest(SubscribeRequest subscribeRequest) {
+        if (currentUser == null) {
+            reply(subscribeRequest, new Response(false, "Требуется авторизация"));
+            return;
+        }
+        subscription.start(subscribeRequest.getEpoch(), subscribeRequest.getSinceVersion(),
+                delta -> reply(subscribeRequest, new Response(true, "", delta)));
+    }
+
+    // Старый вариант запроса без номера: в ответ отправляется сам список
+    private void handleGetProductsRequest() {
+        // Проверяем авторизацию
+        if (currentUser == null) {
+            sendResponse(new Response(false, "Требуется авторизация"));
+            return;
+        }
+
+        // Отправляем список продуктов напрямую
+        sender.accept(collectionManager.getCollection());
+    }
+
+    private void sendResponse(Response response) {
+        sender.accept(response);
+    }
+
+    // Ответ получает номер запроса, чтобы клиент мог сопоставить его при конвейерной отправке
+    private void reply(Request request, Response response) {
+        response.setCorrelationId(request.getCorrelationId());
+        sender.accept(response);
+    }
+
+    public User getCurrentUser() {
+        return currentUser;
+    }
+
+    // Пользователь свободен или уже работает в этом соединении
+    private boolean claimUser(String username) {
+        RequestProcessor owner = activeUsers.putIfAbsent(username, this);
+        return owner == null || owner == this;
+    }
+
+    // Соединение переходит к другой сессии: прежний пользователь перестает числиться
+    // активным, а прежний токен соединения отзывается, если он не продолжается
+    private void switchSession(User user, String token) {
+        User previousUser = currentUser;
+        if (previousUser != null && !previousUser.getUsername().equals(user.getUsername())) {
+            activeUsers.remove(previousUser.getUsername(), this);
+        }
+        String previousToken = currentToken;
+        if (previousToken != null && !previousToken.equals(token)) {
+            sessions.revoke(previousToken);
+        }
+        currentUser = user;
+        currentToken = token;
+    }
+
+    // Сессия продолжена в другом соединении: ее токен теперь принадлежит ему
+    private void retire() {
+        currentUser = null;
+        currentToken = null;
+        subscription.cancel();
+    }
+
+    // Вызывается при закрытии соединения
+    public void release() {
+        subscription.cancel();
+        User user = currentUser;
+        // Удаляем пользователя из списка активных
+        if (user != null) {
+            activeUsers.remove(user.getUsername(), this);
+            System.out.println("Пользователь отключен: " + user.getUsername());
+        }
+    }
+
+    public static boolean isUserActive(String username) {
+        return activeUsers.containsKey(username);
+    }
+}
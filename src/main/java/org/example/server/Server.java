@@ -2,11 +2,15 @@ package org.example.server;
 
 import org.example.management.CollectionManager;
 import org.example.management.CommandManager;
+import org.example.management.DatabaseChangeListener;
 import org.example.management.DatabaseManager;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.util.Scanner;
-import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 public class Server {
@@ -14,16 +18,21 @@ public class Server {
     private final CollectionManager collectionManager;
     private final CommandManager commandManager;
     private final DatabaseManager databaseManager;
-    private final ForkJoinPool forkJoinPool;
+    private final boolean virtualThreads;
+    private final ExecutorService commandExecutor;
     private final AtomicBoolean isRunning;
     private ServerSocket serverSocket;
+    private NioServer nioServer;
+    private ScheduledExecutorService snapshotScheduler;
+    private DatabaseChangeListener changeListener;
 
     public Server(int port, CollectionManager collectionManager, CommandManager commandManager, DatabaseManager databaseManager) {
         this.port = port;
         this.collectionManager = collectionManager;
         this.commandManager = commandManager;
         this.databaseManager = databaseManager;
-        this.forkJoinPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        this.virtualThreads = ServerExecutors.isVirtualMode();
+        this.commandExecutor = ServerExecutors.newCommandExecutor(virtualThreads);
         this.isRunning = new AtomicBoolean(false);
     }
 
@@ -38,15 +47,31 @@ public class Server {
             // Загрузка данных из БД при запуске сервера
             collectionManager.loadFromDatabase();
             System.out.println("Коллекция загружена из БД. Элементов: " + collectionManager.getCollection().size());
+            startSnapshots();
+            // Изменения других экземпляров сервера, работающих с той же БД
+            if (DatabaseChangeListener.isEnabled() && databaseManager.isChangeNotificationAvailable()) {
+                changeListener = new DatabaseChangeListener(databaseManager, collectionManager);
+                changeListener.start();
+            }
+
+            if (ServerConfig.IO_NIO.equals(ServerConfig.getIoMode())) {
+                nioServer = new NioServer(port, collectionManager, commandManager, databaseManager,
+                        commandExecutor, ServerConfig.getIoThreads());
+                nioServer.start();
+                return;
+            }
+
             serverSocket = new ServerSocket(port);
-            System.out.println("Сервер запущен на порту " + port);
+            System.out.println("Сервер запущен на порту " + port + (virtualThreads ? " (виртуальные потоки)" : ""));
 
             while (isRunning.get()) {
                 try {
                     Socket clientSocket = serverSocket.accept();
                     System.out.println("Подключен новый клиент: " + clientSocket.getInetAddress());
-                    // Создаем новый поток для обработки клиента
-                    new ClientHandler(clientSocket, collectionManager, commandManager, databaseManager, forkJoinPool).start();
+                    // Создаем новый поток (обычный или виртуальный) для обработки клиента
+                    ClientHandler handler = new ClientHandler(clientSocket, collectionManager, commandManager,
+                            databaseManager, commandExecutor);
+                    ServerExecutors.newConnectionThread(handler, "client-" + clientSocket.getPort(), virtualThreads).start();
                 } catch (Exception e) {
                     if (isRunning.get()) {
                         System.err.println("Ошибка при принятии подключения: " + e.getMessage());
@@ -60,13 +85,50 @@ public class Server {
         }
     }
 
+    // Периодическая запись снимка коллекции и запись при остановке, в том числе по Ctrl+C
+    private void startSnapshots() {
+        Runtime.getRuntime().addShutdownHook(new Thread(this::stop, "server-shutdown"));
+        int interval = ServerConfig.getSnapshotIntervalSec();
+        if (interval <= 0) {
+            return;
+        }
+        snapshotScheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "collection-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        snapshotScheduler.scheduleWithFixedDelay(this::saveSnapshot, interval, interval, TimeUnit.SECONDS);
+    }
+
+    private void saveSnapshot() {
+        try {
+            collectionManager.saveSnapshot();
+        } catch (Exception e) {
+            System.err.println("Ошибка записи снимка коллекции: " + e.getMessage());
+        }
+    }
+
     public void stop() {
         if (isRunning.compareAndSet(true, false)) {
             try {
+                if (snapshotScheduler != null) {
+                    // Дожидаемся текущей записи, чтобы два потока не писали один файл
+                    snapshotScheduler.shutdown();
+                    snapshotScheduler.awaitTermination(30, TimeUnit.SECONDS);
+                }
                 if (serverSocket != null && !serverSocket.isClosed()) {
                     serverSocket.close();
                 }
-                forkJoinPool.shutdown();
+                if (nioServer != null) {
+                    nioServer.stop();
+                }
+                commandExecutor.shutdown();
+                if (changeListener != null) {
+                    changeListener.stop();
+                }
+                saveSnapshot();
+                collectionManager.close();
+                System.out.println("Кэш пользователей: " + databaseManager.getUserCache().summary());
                 System.out.println("Сервер остановлен");
             } catch (Exception e) {
                 System.err.println("Ошибка при остановке сервера: " + e.getMessage());
@@ -0,0 +1,66 @@
+package org.example.server;
+
+// Настройки сервера задаются системными свойствами (-Dserver.io=nio и т.п.)
+public final class ServerConfig {
+    public static final String IO_CLASSIC = "classic";
+    public static final String IO_NIO = "nio";
+    public static final String THREADS_POOL = "pool";
+    public static final String THREADS_VIRTUAL = "virtual";
+
+    private ServerConfig() {
+    }
+
+    // classic - поток на клиента, nio - селекторы и небольшой пул потоков ввода-вывода
+    public static String getIoMode() {
+        String mode = System.getProperty("server.io", IO_CLASSIC).trim().toLowerCase();
+        if (!IO_CLASSIC.equals(mode) && !IO_NIO.equals(mode)) {
+            System.err.println("Неизвестный режим ввода-вывода '" + mode + "', используется " + IO_CLASSIC);
+            return IO_CLASSIC;
+        }
+        return mode;
+    }
+
+    // pool - ForkJoinPool по числу ядер, virtual - виртуальный поток на соединение и на команду (Java 21)
+    public static String getThreadMode() {
+        String mode = System.getProperty("server.threads", THREADS_POOL).trim().toLowerCase();
+        if (!THREADS_POOL.equals(mode) && !THREADS_VIRTUAL.equals(mode)) {
+            System.err.println("Неизвестный режим потоков '" + mode + "', используется " + THREADS_POOL);
+            return THREADS_POOL;
+        }
+        return mode;
+    }
+
+    public static int getIoThreads() {
+        int defaultThreads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+        return getInt("server.ioThreads", defaultThreads);
+    }
+
+    // Окно объединения изменений перед отправкой подписчику
+    public static int getPushWindowMs() {
+        return Math.max(0, getInt("server.pushWindowMs", 100));
+    }
+
+    // Период записи локального снимка коллекции (0 - только при остановке)
+    public static int getSnapshotIntervalSec() {
+        return Math.max(0, getInt("server.snapshotIntervalSec", 300));
+    }
+
+    // Предел длины кадра до авторизации: запрос входа мал, а больший кадр от анонимного
+    // клиента заставил бы сервер держать под него буфер
+    public static int getMaxUnauthenticatedFrame() {
+        return Math.max(1024, getInt("server.maxUnauthenticatedFrame", 64 * 1024));
+    }
+
+    static int getInt(String name, int defaultValue) {
+        String value = System.getProperty(name);
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            System.err.println("Неверное значение " + name + "=" + value + ", используется " + defaultValue);
+            return defaultValue;
+        }
+    }
+}
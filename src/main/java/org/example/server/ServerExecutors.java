@@ -0,0 +1,81 @@
+package org.example.server;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+// Создание потоков для соединений и пулов для команд в зависимости от режима выполнения.
+// Виртуальные потоки доступны начиная с Java 21; API вызывается через рефлексию, чтобы
+// сборка по умолчанию (Java 17) тоже компилировалась, а на старой JVM был откат на пул.
+public final class ServerExecutors {
+    private static final Method NEW_VIRTUAL_EXECUTOR = findNewVirtualExecutor();
+    private static final Method OF_VIRTUAL = findOfVirtual();
+    private static final Method BUILDER_NAME = findBuilderMethod("name", String.class);
+    private static final Method BUILDER_UNSTARTED = findBuilderMethod("unstarted", Runnable.class);
+
+    private ServerExecutors() {
+    }
+
+    public static boolean isVirtualMode() {
+        if (!ServerConfig.THREADS_VIRTUAL.equals(ServerConfig.getThreadMode())) {
+            return false;
+        }
+        if (NEW_VIRTUAL_EXECUTOR == null || OF_VIRTUAL == null || BUILDER_NAME == null || BUILDER_UNSTARTED == null) {
+            System.err.println("Виртуальные потоки недоступны в Java " + Runtime.version().feature()
+                    + ", используется пул потоков");
+            return false;
+        }
+        return true;
+    }
+
+    // Пул для выполнения команд: виртуальный поток на задачу или ForkJoinPool по числу ядер
+    public static ExecutorService newCommandExecutor(boolean virtual) {
+        if (virtual) {
+            try {
+                return (ExecutorService) NEW_VIRTUAL_EXECUTOR.invoke(null);
+            } catch (ReflectiveOperationException e) {
+                System.err.println("Не удалось создать пул виртуальных потоков: " + e.getMessage());
+            }
+        }
+        return new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+    }
+
+    // Поток для обслуживания одного соединения
+    public static Thread newConnectionThread(Runnable task, String name, boolean virtual) {
+        if (virtual) {
+            try {
+                Object builder = BUILDER_NAME.invoke(OF_VIRTUAL.invoke(null), name);
+                return (Thread) BUILDER_UNSTARTED.invoke(builder, task);
+            } catch (ReflectiveOperationException e) {
+                System.err.println("Не удалось создать виртуальный поток: " + e.getMessage());
+            }
+        }
+        return new Thread(task, name);
+    }
+
+    private static Method findNewVirtualExecutor() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    private static Method findOfVirtual() {
+        try {
+            return Thread.class.getMethod("ofVirtual");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    // Методы интерфейса Thread.Builder (Java 21)
+    private static Method findBuilderMethod(String name, Class<?>... parameterTypes) {
+        try {
+            return Class.forName("java.lang.Thread$Builder").getMethod(name, parameterTypes);
+        } catch (ClassNotFoundException | NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package org.example.server;
+
+import org.example.data.User;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Сессии, выданные при входе: случайный токен -> пользователь. Общая для всех соединений,
+// поэтому клиент после переподключения продолжает сессию по токену. Сессия истекает,
+// если ею не пользовались дольше ttlMillis
+public class SessionTable {
+    private static final int TOKEN_BYTES = 16;
+    // Раз в столько выдач из таблицы удаляются истекшие сессии
+    private static final int SWEEP_INTERVAL = 256;
+
+    private final long ttlMillis;
+    private final SecureRandom random = new SecureRandom();
+    private final Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+    private final ConcurrentHashMap<String, Session> sessions = new ConcurrentHashMap<>();
+    private final AtomicInteger issuedSinceSweep = new AtomicInteger();
+
+    private static final class Session {
+        final User user;
+        volatile long lastSeen;
+
+        Session(User user) {
+            this.user = user;
+            this.lastSeen = System.currentTimeMillis();
+        }
+    }
+
+    public SessionTable(long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+    }
+
+    public String issue(User user) {
+        if (issuedSinceSweep.incrementAndGet() >= SWEEP_INTERVAL) {
+            issuedSinceSweep.set(0);
+            long now = System.currentTimeMillis();
+            sessions.values().removeIf(session -> now - session.lastSeen > ttlMillis);
+        }
+        byte[] bytes = new byte[TOKEN_BYTES];
+        random.nextBytes(bytes);
+        String token = encoder.encodeToString(bytes);
+        sessions.put(token, new Session(user));
+        return token;
+    }
+
+    // Пользователь сессии или null, если токен неизвестен или истек; продлевает сессию
+    public User resolve(String token) {
+        if (token == null) {
+            return null;
+        }
+        Session session = sessions.get(token);
+        if (session == null) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        if (now - session.lastSeen > ttlMillis) {
+            sessions.remove(token, session);
+            return null;
+        }
+        session.lastSeen = now;
+        return session.user;
+    }
+
+    public void revoke(String token) {
+        if (token != null) {
+            sessions.remove(token);
+        }
+    }
+
+    public int size() {
+        return sessions.size();
+    }
+}
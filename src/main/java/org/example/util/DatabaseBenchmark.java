@@ -0,0 +1,140 @@
+package org.example.util;
+
+import org.example.data.Coordinates;
+import org.example.data.Organization;
+import org.example.data.Product;
+import org.example.data.UnitOfMeasure;
+import org.example.data.User;
+import org.example.management.DatabaseConnection;
+import org.example.management.DatabaseManager;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Замер задержки операций add/update/remove через DatabaseManager на реальной БД.
+// Сравнение с кэшем prepared statements и без него:
+//   java -Ddb.prepareThreshold=0 ... org.example.util.DatabaseBenchmark 500
+//   java -Ddb.prepareThreshold=5 ... org.example.util.DatabaseBenchmark 500
+// Столбец "проходов" - средняя задержка операции в единицах задержки пустого запроса
+// SELECT 1, то есть примерное число обращений к серверу через SSH-туннель.
+// Все созданные данные удаляются по окончании.
+public class DatabaseBenchmark {
+    private static final int WARMUP_ITERATIONS = 20;
+
+    private interface Operation {
+        void run(int iteration) throws SQLException;
+    }
+
+    public static void main(String[] args) {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        String runId = Long.toString(System.currentTimeMillis(), 36);
+
+        DatabaseManager databaseManager = new DatabaseManager();
+        User user = null;
+        try {
+            user = databaseManager.registerUser("bench_" + runId, HashUtil.sha256(runId));
+            System.out.println("prepareThreshold=" + System.getProperty("db.prepareThreshold", "5")
+                    + ", итераций: " + iterations);
+
+            run(databaseManager, user, runId + "w", WARMUP_ITERATIONS, false);
+            run(databaseManager, user, runId, iterations, true);
+            System.out.println("Получение соединения из пула: " + DatabaseConnection.getAcquireLatency().summary());
+        } catch (SQLException e) {
+            System.err.println("Ошибка бенчмарка: " + e.getMessage());
+        } finally {
+            if (user != null) {
+                cleanup(databaseManager, user);
+            }
+            DatabaseConnection.close();
+        }
+    }
+
+    private static void run(DatabaseManager databaseManager, User user, String prefix,
+                            int iterations, boolean report) throws SQLException {
+        List<Long> ids = new ArrayList<>();
+        int creatorId = user.getId();
+
+        long[] ping = measure(iterations, i -> ping());
+        long[] add = measure(iterations, i -> {
+            ids.add(databaseManager.addProduct(newProduct(prefix, i, creatorId), creatorId));
+        });
+        long[] update = measure(iterations, i -> {
+            databaseManager.updateProduct(ids.get(i), newProduct(prefix + "u", i, creatorId), creatorId);
+        });
+        long[] remove = measure(iterations, i -> {
+            databaseManager.removeProduct(ids.get(i));
+        });
+
+        if (report) {
+            double roundTrip = average(ping);
+            print("ping", ping, roundTrip);
+            print("add", add, roundTrip);
+            print("update", update, roundTrip);
+            print("remove", remove, roundTrip);
+        }
+    }
+
+    private static long[] measure(int iterations, Operation operation) throws SQLException {
+        long[] times = new long[iterations];
+        for (int i = 0; i < iterations; i++) {
+            long start = System.nanoTime();
+            operation.run(i);
+            times[i] = System.nanoTime() - start;
+        }
+        return times;
+    }
+
+    private static void ping() throws SQLException {
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement("SELECT 1")) {
+            stmt.executeQuery().close();
+        }
+    }
+
+    private static double average(long[] times) {
+        return Arrays.stream(times).average().orElse(0) / 1_000_000.0;
+    }
+
+    private static void print(String name, long[] times, double roundTrip) {
+        long[] sorted = times.clone();
+        Arrays.sort(sorted);
+        double avg = average(sorted);
+        System.out.printf("%-8s avg=%.2f мс  p50=%.2f мс  p95=%.2f мс  p99=%.2f мс  проходов=%.1f%n", name, avg,
+                percentile(sorted, 0.50), percentile(sorted, 0.95), percentile(sorted, 0.99),
+                roundTrip > 0 ? avg / roundTrip : 0);
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.min(sorted.length - 1, Math.round(p * (sorted.length - 1)));
+        return sorted[index] / 1_000_000.0;
+    }
+
+    private static Product newProduct(String prefix, int i, int creatorId) {
+        Organization manufacturer = new Organization("bench", "bench " + prefix + " " + i, 10, creatorId);
+        return new Product("bench", new Coordinates(1L, 1f), 100L, "bench-" + prefix + "-" + i,
+                (float) i, UnitOfMeasure.GRAMS, manufacturer, creatorId);
+    }
+
+    private static void cleanup(DatabaseManager databaseManager, User user) {
+        try {
+            databaseManager.clearUserProducts(user.getId());
+            try (Connection conn = DatabaseConnection.getConnection();
+                 PreparedStatement orgs = conn.prepareStatement("DELETE FROM organizations WHERE creator_id = ?");
+                 PreparedStatement users = conn.prepareStatement("DELETE FROM users WHERE id = ?")) {
+                orgs.setInt(1, user.getId());
+                orgs.executeUpdate();
+                users.setInt(1, user.getId());
+                users.executeUpdate();
+            }
+        } catch (SQLException e) {
+            System.err.println("Ошибка очистки данных бенчмарка: " + e.getMessage());
+        }
+    }
+}
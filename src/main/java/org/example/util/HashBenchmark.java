@@ -0,0 +1,76 @@
+package org.example.util;
+
+import java.lang.management.ManagementFactory;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+// Сравнение HashUtil.sha256 с прежней реализацией (getInstance на каждый вызов,
+// кодировка платформы, Integer.toHexString и StringBuilder):
+//   java -cp target/classes org.example.util.HashBenchmark 1000000
+// Время - среднее на операцию после прогрева, память - выделенные потоком байты
+// на операцию (ThreadMXBean), то есть то, что показал бы JMH с профилировщиком gc
+public class HashBenchmark {
+    private static final int WARMUP_ROUNDS = 5;
+
+    private interface Hash {
+        String apply(String input);
+    }
+
+    public static void main(String[] args) {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        String[] inputs = {"password", "correct horse battery staple", "пароль-123"};
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+        for (String input : inputs) {
+            if (!HashUtil.sha256(input).equals(legacySha256(input))) {
+                System.out.println("Внимание: хэш \"" + input + "\" отличается от прежнего (кодировка платформы не UTF-8)");
+            }
+        }
+
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            run(HashBenchmark::legacySha256, inputs, iterations / 10, threads);
+            run(HashUtil::sha256, inputs, iterations / 10, threads);
+        }
+        System.out.println("итераций: " + iterations);
+        print("прежний", run(HashBenchmark::legacySha256, inputs, iterations, threads));
+        print("HashUtil", run(HashUtil::sha256, inputs, iterations, threads));
+    }
+
+    // {нс на операцию, байт на операцию}
+    private static double[] run(Hash hash, String[] inputs, int iterations, com.sun.management.ThreadMXBean threads) {
+        long threadId = Thread.currentThread().getId();
+        int sink = 0;
+        long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink += hash.apply(inputs[i % inputs.length]).charAt(i & 31);
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        if (sink == 42) {
+            System.out.print("");
+        }
+        return new double[]{elapsed / (double) iterations, allocated / (double) iterations};
+    }
+
+    private static void print(String name, double[] result) {
+        System.out.printf("%-10s %8.1f нс/оп  %8.1f байт/оп%n", name, result[0], result[1]);
+    }
+
+    private static String legacySha256(String input) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(input.getBytes());
+            StringBuilder hexString = new StringBuilder();
+            for (byte b : hash) {
+                String hex = Integer.toHexString(0xff & b);
+                if (hex.length() == 1) hexString.append('0');
+                hexString.append(hex);
+            }
+            return hexString.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 algorithm not found", e);
+        }
+    }
+}
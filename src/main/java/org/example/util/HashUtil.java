@@ -1,28 +1,67 @@
 package org.example.util;
 
+import java.nio.charset.StandardCharsets;
+import java.security.DigestException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
 public class HashUtil {
+    private static final int SHA256_LENGTH = 32;
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    // MessageDigest не потокобезопасен: у каждого потока свой экземпляр и буфер результата,
+    // поэтому getInstance вызывается один раз на поток, а не на каждый хэш
+    private static final ThreadLocal<Hasher> HASHER = ThreadLocal.withInitial(Hasher::new);
+
+    private static final class Hasher {
+        final MessageDigest digest;
+        final byte[] hash = new byte[SHA256_LENGTH];
+        final char[] hex = new char[SHA256_LENGTH * 2];
+
+        Hasher() {
+            try {
+                digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new RuntimeException("SHA-256 algorithm not found", e);
+            }
+        }
+    }
+
+    // Кодировка задана явно: хэш пароля не должен зависеть от кодировки платформы
     public static String sha256(String input) {
+        Hasher hasher = HASHER.get();
         try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] hash = digest.digest(input.getBytes());
-            StringBuilder hexString = new StringBuilder();
-
-            for (byte b : hash) {
-                String hex = Integer.toHexString(0xff & b);
-                if (hex.length() == 1) hexString.append('0');
-                hexString.append(hex);
-            }
+            hasher.digest.update(input.getBytes(StandardCharsets.UTF_8));
+            hasher.digest.digest(hasher.hash, 0, SHA256_LENGTH);
+        } catch (DigestException e) {
+            hasher.digest.reset();
+            throw new RuntimeException("SHA-256 digest failed", e);
+        }
+        return toHex(hasher.hash, hasher.hex);
+    }
 
-            return hexString.toString();
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException("SHA-256 algorithm not found", e);
+    private static String toHex(byte[] bytes, char[] chars) {
+        for (int i = 0; i < bytes.length; i++) {
+            chars[2 * i] = HEX_DIGITS[(bytes[i] >> 4) & 0x0f];
+            chars[2 * i + 1] = HEX_DIGITS[bytes[i] & 0x0f];
         }
+        return new String(chars, 0, bytes.length * 2);
     }
 
     public static boolean verify(String input, String hash) {
-        return sha256(input).equals(hash);
+        return hash != null && hashEquals(sha256(input), hash);
+    }
+
+    // Сравнение за время, не зависящее от того, в каком символе строки различаются
+    public static boolean hashEquals(String a, String b) {
+        if (a == null || b == null) {
+            return a == b;
+        }
+        int diff = a.length() ^ b.length();
+        int length = Math.min(a.length(), b.length());
+        for (int i = 0; i < length; i++) {
+            diff |= a.charAt(i) ^ b.charAt(i);
+        }
+        return diff == 0;
     }
 }
\ No newline at end of file
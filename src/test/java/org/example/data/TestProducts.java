@@ -0,0 +1,22 @@
+package org.example.data;
+
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+
+// Продукты для тестов с заполненными обязательными полями
+public final class TestProducts {
+    private static final ZonedDateTime CREATED = ZonedDateTime.of(2024, 1, 1, 12, 0, 0, 0, ZoneId.of("UTC"));
+
+    private TestProducts() {
+    }
+
+    public static Product product(long id, String name, long price) {
+        return product(id, name, price, 1);
+    }
+
+    public static Product product(long id, String name, long price, int creatorId) {
+        Organization manufacturer = new Organization(id, "org" + id, "Organization " + id, 10, creatorId);
+        return new Product(id, name, new Coordinates(id, 1.5f), CREATED, price, "PN-" + id,
+                2.5f, UnitOfMeasure.GRAMS, manufacturer, creatorId);
+    }
+}
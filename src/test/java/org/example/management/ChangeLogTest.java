@@ -0,0 +1,71 @@
+package org.example.management;
+
+import org.example.data.Product;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.example.data.TestProducts.product;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChangeLogTest {
+
+    @Test
+    void returnsLatestValuePerId() {
+        ChangeLog log = new ChangeLog(16);
+        log.append(1, 10, product(10, "a", 1));
+        log.append(2, 11, product(11, "b", 2));
+        log.append(3, 10, product(10, "c", 3));
+
+        Map<Long, Product> changes = log.since(0, 3);
+        assertEquals(2, changes.size());
+        assertEquals("c", changes.get(10L).getName());
+        assertEquals("b", changes.get(11L).getName());
+    }
+
+    @Test
+    void removalIsNotOverwrittenByOlderUpsert() {
+        ChangeLog log = new ChangeLog(16);
+        log.append(1, 10, product(10, "a", 1));
+        log.append(2, 10, product(10, "b", 2));
+        log.append(3, 10, null);
+
+        Map<Long, Product> changes = log.since(0, 3);
+        assertTrue(changes.containsKey(10L));
+        assertNull(changes.get(10L));
+    }
+
+    @Test
+    void onlyChangesAfterSinceVersion() {
+        ChangeLog log = new ChangeLog(16);
+        log.append(1, 10, product(10, "a", 1));
+        log.append(2, 11, product(11, "b", 2));
+
+        Map<Long, Product> changes = log.since(1, 2);
+        assertEquals(Map.of(11L, changes.get(11L)), changes);
+        assertTrue(log.since(2, 2).isEmpty());
+    }
+
+    @Test
+    void truncatedHistoryRequiresSnapshot() {
+        ChangeLog log = new ChangeLog(2);
+        log.append(1, 10, product(10, "a", 1));
+        log.append(2, 11, product(11, "b", 2));
+        log.append(3, 12, product(12, "c", 3));
+
+        assertNull(log.since(0, 3));
+        assertEquals(1, log.since(2, 3).size());
+        assertEquals(2, log.size());
+    }
+
+    @Test
+    void resetForgetsEarlierVersions() {
+        ChangeLog log = new ChangeLog(16);
+        log.append(1, 10, product(10, "a", 1));
+        log.reset(5);
+
+        assertNull(log.since(1, 5));
+        assertTrue(log.since(5, 5).isEmpty());
+        assertEquals(0, log.size());
+    }
+}
@@ -0,0 +1,87 @@
+package org.example.management;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CommandHistoryTest {
+    private static final List<String> NAMES = List.of("add", "show", "info", "clear");
+
+    @Test
+    void keepsLastEntriesInOrder() {
+        CommandHistory history = new CommandHistory(NAMES, 3);
+        for (int i = 0; i < 5; i++) {
+            history.record(7, NAMES.get(i % NAMES.size()), 1000 + i, i * 1_000_000L);
+        }
+        List<CommandHistory.Entry> entries = history.get(7);
+        assertEquals(3, entries.size());
+        assertEquals("info", entries.get(0).getCommand());
+        assertEquals("clear", entries.get(1).getCommand());
+        assertEquals("add", entries.get(2).getCommand());
+        assertEquals(1004, entries.get(2).getTimestamp().toEpochMilli());
+        assertEquals(4.0, entries.get(2).getLatencyMillis());
+    }
+
+    @Test
+    void usersHaveSeparateHistories() {
+        CommandHistory history = new CommandHistory(NAMES, 4);
+        history.record(1000, "add", 1, 0);
+        history.record(-1, "show", 2, 0);
+        history.record(5, "info", 3, 0);
+        assertEquals("add", history.get(1000).get(0).getCommand());
+        assertEquals("show", history.get(-1).get(0).getCommand());
+        assertEquals("info", history.get(5).get(0).getCommand());
+        assertTrue(history.get(42).isEmpty());
+    }
+
+    @Test
+    void unknownCommandIsNotRecorded() {
+        CommandHistory history = new CommandHistory(NAMES, 4);
+        history.record(1, "history", 1, 0);
+        assertTrue(history.get(1).isEmpty());
+    }
+
+    // Писатели одного пользователя попадают в одни и те же ячейки маленького кольца;
+    // каждая прочитанная запись должна быть целой: все поля от одного вызова record
+    @Test
+    void concurrentWritersNeverProduceTornEntries() throws InterruptedException {
+        CommandHistory history = new CommandHistory(NAMES, 1);
+        int writers = 4;
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicBoolean torn = new AtomicBoolean(false);
+        CountDownLatch started = new CountDownLatch(writers);
+        Thread[] threads = new Thread[writers];
+        for (int w = 0; w < writers; w++) {
+            int writer = w;
+            threads[w] = new Thread(() -> {
+                started.countDown();
+                for (long i = 0; running.get(); i++) {
+                    long timestamp = i * writers + writer;
+                    history.record(1, NAMES.get(writer), timestamp, timestamp * 1_000_000L);
+                }
+            });
+            threads[w].start();
+        }
+        started.await();
+        long deadline = System.currentTimeMillis() + 500;
+        while (System.currentTimeMillis() < deadline && !torn.get()) {
+            for (CommandHistory.Entry entry : history.get(1)) {
+                long timestamp = entry.getTimestamp().toEpochMilli();
+                if (!entry.getCommand().equals(NAMES.get((int) (timestamp % writers)))
+                        || entry.getLatencyMillis() != timestamp) {
+                    torn.set(true);
+                }
+            }
+        }
+        running.set(false);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertFalse(torn.get());
+        assertFalse(history.get(1).isEmpty());
+    }
+}
@@ -0,0 +1,81 @@
+package org.example.management;
+
+import org.example.data.Product;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.example.data.TestProducts.product;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProductStoreTest {
+
+    private static Product costing(long id, Float cost) {
+        Product product = product(id, "p" + id, 10);
+        product.setManufactureCost(cost);
+        return product;
+    }
+
+    private static List<Long> ids(Iterable<Product> products) {
+        List<Long> result = new ArrayList<>();
+        for (Product product : products) {
+            result.add(product.getId());
+        }
+        return result;
+    }
+
+    @Test
+    void valuesAreOrderedByCostThenId() {
+        ProductStore store = new ProductStore();
+        store.put(costing(3, 5f));
+        store.put(costing(1, 5f));
+        store.put(costing(2, 1f));
+        store.put(costing(4, null));
+        assertEquals(List.of(4L, 2L, 1L, 3L), ids(store.values()));
+        assertEquals(4L, store.first().getId());
+    }
+
+    @Test
+    void putReplacesProductWithSameId() {
+        ProductStore store = new ProductStore();
+        Product old = costing(1, 1f);
+        store.put(old);
+        store.put(costing(2, 2f));
+        assertSame(old, store.put(costing(1, 3f)));
+        assertEquals(2, store.size());
+        // Замененный продукт переставлен по новой стоимости
+        assertEquals(List.of(2L, 1L), ids(store.values()));
+        assertEquals(3f, store.get(1L).getManufactureCost());
+    }
+
+    @Test
+    void removalKeepsBothIndexesInSync() {
+        ProductStore store = new ProductStore();
+        for (long id = 1; id <= 6; id++) {
+            store.put(costing(id, (float) id));
+        }
+        assertEquals(3L, store.remove(3L).getId());
+        assertNull(store.remove(3L));
+        assertEquals(1L, store.pollFirst().getId());
+        assertNull(store.get(1L));
+
+        List<Product> removed = store.removeIf(product -> product.getId() % 2 == 0);
+        assertEquals(List.of(2L, 4L, 6L), ids(removed));
+        assertEquals(List.of(5L), ids(store.values()));
+        assertEquals(1, store.size());
+        assertNull(store.get(4L));
+
+        store.clear();
+        assertTrue(store.isEmpty());
+        assertNull(store.first());
+        assertNull(store.pollFirst());
+    }
+
+    @Test
+    void valuesAreReadOnly() {
+        ProductStore store = new ProductStore();
+        store.put(costing(1, 1f));
+        assertThrows(UnsupportedOperationException.class, () -> store.values().clear());
+    }
+}
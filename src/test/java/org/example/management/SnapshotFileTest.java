@@ -0,0 +1,83 @@
+package org.example.management;
+
+import org.example.data.Product;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.example.data.TestProducts.product;
+import static org.junit.jupiter.api.Assertions.*;
+
+class SnapshotFileTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void snapshotRoundTrip() throws IOException {
+        Path file = directory.resolve("collection.snapshot");
+        Instant syncedAt = Instant.ofEpochMilli(1_700_000_000_123L);
+        SnapshotFile.write(file, 42, syncedAt, List.of(product(7, "a", 10), product(3, "b", 20)));
+
+        SnapshotFile snapshot = SnapshotFile.read(file);
+        assertNotNull(snapshot);
+        assertEquals(42, snapshot.getVersion());
+        assertEquals(syncedAt, snapshot.getSyncedAt());
+        assertEquals(7, snapshot.getMaxId());
+        List<Product> products = snapshot.getProducts();
+        assertEquals(2, products.size());
+        assertEquals("a", products.get(0).getName());
+        assertEquals(20L, products.get(1).getPrice());
+        assertFalse(Files.exists(directory.resolve("collection.snapshot.tmp")));
+    }
+
+    @Test
+    void emptyCollectionAndMissingFile() throws IOException {
+        Path file = directory.resolve("collection.snapshot");
+        assertNull(SnapshotFile.read(file));
+
+        SnapshotFile.write(file, 0, Instant.EPOCH, List.of());
+        SnapshotFile snapshot = SnapshotFile.read(file);
+        assertEquals(0, snapshot.getMaxId());
+        assertTrue(snapshot.getProducts().isEmpty());
+    }
+
+    @Test
+    void rewriteReplacesPreviousSnapshot() throws IOException {
+        Path file = directory.resolve("collection.snapshot");
+        SnapshotFile.write(file, 1, Instant.EPOCH, List.of(product(1, "old", 1)));
+        SnapshotFile.write(file, 2, Instant.EPOCH, List.of(product(2, "new", 2)));
+        SnapshotFile snapshot = SnapshotFile.read(file);
+        assertEquals(2, snapshot.getVersion());
+        assertEquals("new", snapshot.getProducts().get(0).getName());
+    }
+
+    @Test
+    void corruptedOrTruncatedSnapshotIsRejected() throws IOException {
+        Path file = directory.resolve("collection.snapshot");
+        SnapshotFile.write(file, 5, Instant.EPOCH, List.of(product(1, "a", 10)));
+        byte[] original = Files.readAllBytes(file);
+
+        // Один измененный байт в середине: контрольная сумма не сойдется
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{(byte) ~original[original.length / 2]}), original.length / 2);
+        }
+        assertThrows(StreamCorruptedException.class, () -> SnapshotFile.read(file));
+
+        Files.write(file, Arrays.copyOf(original, original.length - 3));
+        assertThrows(StreamCorruptedException.class, () -> SnapshotFile.read(file));
+
+        Files.write(file, new byte[3]);
+        assertThrows(StreamCorruptedException.class, () -> SnapshotFile.read(file));
+    }
+}
@@ -0,0 +1,162 @@
+package org.example.management;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WriteAheadLogTest {
+
+    @TempDir
+    Path directory;
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static List<String> payloads(List<WriteAheadLog.Record> records) {
+        List<String> result = new ArrayList<>();
+        for (WriteAheadLog.Record record : records) {
+            result.add(new String(record.payload, StandardCharsets.UTF_8));
+        }
+        return result;
+    }
+
+    @Test
+    void recordsSurviveReopen() throws IOException {
+        try (WriteAheadLog log = new WriteAheadLog(directory, 1024, 0, 0)) {
+            long first = log.append(bytes("one"));
+            long second = log.append(bytes("two"));
+            assertEquals(WriteAheadLog.recordSize(3), first);
+            assertEquals(first + WriteAheadLog.recordSize(3), second);
+            log.sync(second);
+        }
+        try (WriteAheadLog log = new WriteAheadLog(directory, 1024, 0, 0)) {
+            List<WriteAheadLog.Record> records = log.readFrom(0);
+            assertEquals(List.of("one", "two"), payloads(records));
+            assertEquals(WriteAheadLog.recordSize(3), records.get(0).position);
+            assertEquals(List.of("two"), payloads(log.readFrom(records.get(0).position)));
+        }
+    }
+
+    @Test
+    void corruptedTailIsTruncated() throws IOException {
+        long end;
+        try (WriteAheadLog log = new WriteAheadLog(directory, 1024, 0, 0)) {
+            log.append(bytes("good"));
+            end = log.append(bytes("broken"));
+        }
+        Path segment = onlySegment();
+        // Портим последний байт последней записи: CRC не сойдется
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{'X'}), end - 1);
+        }
+        try (WriteAheadLog log = new WriteAheadLog(directory, 1024, 0, 0)) {
+            assertEquals(List.of("good"), payloads(log.readFrom(0)));
+            assertEquals(WriteAheadLog.recordSize(4), Files.size(segment));
+            // Новая запись идет сразу за последней целой
+            assertEquals(2 * WriteAheadLog.recordSize(4), log.append(bytes("next")));
+            assertEquals(List.of("good", "next"), payloads(log.readFrom(0)));
+        }
+    }
+
+    @Test
+    void partialRecordIsTruncated() throws IOException {
+        try (WriteAheadLog log = new WriteAheadLog(directory, 1024, 0, 0)) {
+            log.append(bytes("good"));
+        }
+        // Запись оборвалась на заголовке
+        Files.write(onlySegment(), new byte[]{0, 0, 0, 20, 1}, StandardOpenOption.APPEND);
+        try (WriteAheadLog log = new WriteAheadLog(directory, 1024, 0, 0)) {
+            assertEquals(List.of("good"), payloads(log.readFrom(0)));
+            assertEquals(WriteAheadLog.recordSize(4), Files.size(onlySegment()));
+        }
+    }
+
+    @Test
+    void corruptionInClosedSegmentIsFatal() throws IOException {
+        long firstEnd;
+        try (WriteAheadLog log = new WriteAheadLog(directory, 2 * WriteAheadLog.recordSize(2), 0, 0)) {
+            firstEnd = log.append(bytes("10"));
+            for (int i = 11; i < 16; i++) {
+                log.append(bytes(String.valueOf(i)));
+            }
+        }
+        // Первая запись первого сегмента испорчена; дальше целые записи других сегментов
+        try (FileChannel channel = FileChannel.open(directory.resolve(String.format("%020d.wal", 0)),
+                StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{'X'}), firstEnd - 1);
+        }
+        try (WriteAheadLog log = new WriteAheadLog(directory, 2 * WriteAheadLog.recordSize(2), 0, 0)) {
+            assertThrows(StreamCorruptedException.class, () -> log.readFrom(0));
+        }
+    }
+
+    @Test
+    void scanCrossesSegmentsAndStops() throws IOException {
+        try (WriteAheadLog log = new WriteAheadLog(directory, 2 * WriteAheadLog.recordSize(2), 10, 0)) {
+            List<Long> starts = new ArrayList<>();
+            long position = 0;
+            for (int i = 10; i < 16; i++) {
+                starts.add(position);
+                position = log.append(bytes(String.valueOf(i)));
+            }
+            assertEquals(3, segmentCount());
+
+            List<WriteAheadLog.Record> seen = new ArrayList<>();
+            assertTrue(log.scan(starts.get(1), record -> {
+                seen.add(record);
+                return seen.size() < 3;
+            }));
+            assertEquals(List.of("11", "12", "13"), payloads(seen));
+        }
+    }
+
+    @Test
+    void confirmedSegmentsAreRemovedAndScanReportsGap() throws IOException {
+        try (WriteAheadLog log = new WriteAheadLog(directory, 2 * WriteAheadLog.recordSize(2), 0, 0)) {
+            long position = 0;
+            for (int i = 10; i < 16; i++) {
+                position = log.append(bytes(String.valueOf(i)));
+            }
+            log.confirm(position);
+            assertEquals(1, segmentCount());
+            assertEquals(4 * WriteAheadLog.recordSize(2), log.getFirstPosition());
+            assertFalse(log.scan(0, record -> true));
+
+            List<WriteAheadLog.Record> seen = new ArrayList<>();
+            assertTrue(log.scan(log.getFirstPosition(), record -> seen.add(record)));
+            assertEquals(List.of("14", "15"), payloads(seen));
+        }
+        try (WriteAheadLog log = new WriteAheadLog(directory, 2 * WriteAheadLog.recordSize(2), 0, 0)) {
+            assertEquals(6 * WriteAheadLog.recordSize(2), log.getConfirmed());
+            assertTrue(log.readFrom(log.getConfirmed()).isEmpty());
+        }
+    }
+
+    private Path onlySegment() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            List<Path> segments = files.filter(file -> file.toString().endsWith(".wal")).toList();
+            assertEquals(1, segments.size());
+            return segments.get(0);
+        }
+    }
+
+    private long segmentCount() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.toString().endsWith(".wal")).count();
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package org.example.network;
+
+import org.example.data.Organization;
+import org.example.data.Product;
+import org.example.data.UnitOfMeasure;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.StreamCorruptedException;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.List;
+
+import static org.example.data.TestProducts.product;
+import static org.junit.jupiter.api.Assertions.*;
+
+class BinaryCodecTest {
+
+    @SuppressWarnings("unchecked")
+    private static <T> T roundTrip(T message) throws Exception {
+        byte[] payload = BinaryCodec.INSTANCE.encode(message);
+        return (T) BinaryCodec.INSTANCE.decode(payload, 0, payload.length);
+    }
+
+    private static void assertSameProduct(Product expected, Product actual) {
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getName(), actual.getName());
+        assertEquals(expected.getCoordinates().getX(), actual.getCoordinates().getX());
+        assertEquals(expected.getCoordinates().getY(), actual.getCoordinates().getY());
+        assertEquals(expected.getCreationDate().toInstant(), actual.getCreationDate().toInstant());
+        assertEquals(expected.getPrice(), actual.getPrice());
+        assertEquals(expected.getPartNumber(), actual.getPartNumber());
+        assertEquals(expected.getManufactureCost(), actual.getManufactureCost());
+        assertEquals(expected.getUnitOfMeasure(), actual.getUnitOfMeasure());
+        assertEquals(expected.getCreatorId(), actual.getCreatorId());
+        Organization manufacturer = expected.getManufacturer();
+        if (manufacturer == null) {
+            assertNull(actual.getManufacturer());
+        } else {
+            assertEquals(manufacturer.getId(), actual.getManufacturer().getId());
+            assertEquals(manufacturer.getName(), actual.getManufacturer().getName());
+            assertEquals(manufacturer.getFullName(), actual.getManufacturer().getFullName());
+            assertEquals(manufacturer.getEmployeesCount(), actual.getManufacturer().getEmployeesCount());
+        }
+    }
+
+    @Test
+    void primitivesRoundTrip() throws Exception {
+        assertNull(roundTrip(null));
+        assertEquals(-42, (int) roundTrip(-42));
+        assertEquals(Long.MIN_VALUE, (long) roundTrip(Long.MIN_VALUE));
+        assertEquals("GET_PRODUCTS", roundTrip("GET_PRODUCTS"));
+        assertEquals("Привет", roundTrip("Привет"));
+    }
+
+    @Test
+    void requestsKeepCorrelationIdAndFields() throws Exception {
+        AuthRequest auth = new AuthRequest("user", "пароль");
+        auth.setIsRegistration(true);
+        auth.setCorrelationId(17);
+        AuthRequest decodedAuth = roundTrip(auth);
+        assertEquals("user", decodedAuth.getUsername());
+        assertEquals("пароль", decodedAuth.getPassword());
+        assertTrue(decodedAuth.isRegistration());
+        assertEquals(17, decodedAuth.getCorrelationId());
+
+        CommandRequest command = new CommandRequest("add", new String[]{"a", "", "c"}, "token");
+        command.setCorrelationId(Long.MAX_VALUE);
+        CommandRequest decodedCommand = roundTrip(command);
+        assertEquals("add", decodedCommand.getCommand());
+        assertArrayEquals(new String[]{"a", "", "c"}, decodedCommand.getArgs());
+        assertEquals("token", decodedCommand.getToken());
+        assertEquals(Long.MAX_VALUE, decodedCommand.getCorrelationId());
+
+        SubscribeRequest subscribe = roundTrip(new SubscribeRequest(123456789L, -1));
+        assertEquals(123456789L, subscribe.getEpoch());
+        assertEquals(-1, subscribe.getSinceVersion());
+
+        assertEquals("abc", ((ResumeRequest) roundTrip(new ResumeRequest("abc"))).getToken());
+    }
+
+    @Test
+    void responseWithSessionTicket() throws Exception {
+        Response response = new Response(true, "ok", new SessionTicket(5, "token"));
+        response.setCorrelationId(3);
+        Response decoded = roundTrip(response);
+        assertTrue(decoded.isSuccess());
+        assertEquals("ok", decoded.getMessage());
+        assertEquals(3, decoded.getCorrelationId());
+        SessionTicket ticket = (SessionTicket) decoded.getData();
+        assertEquals(5, ticket.getUserId());
+        assertEquals("token", ticket.getToken());
+    }
+
+    @Test
+    void productsRoundTrip() throws Exception {
+        Product full = product(1, "full", 100);
+        Product bare = new Product(2L, "bare", full.getCoordinates(),
+                ZonedDateTime.of(2024, 6, 1, 0, 0, 0, 0, ZoneId.of("Europe/Moscow")), null, "PN-2", null, UnitOfMeasure.LITERS, null, 3);
+        List<Product> decoded = roundTrip(List.of(full, bare));
+        assertEquals(2, decoded.size());
+        assertSameProduct(full, decoded.get(0));
+        assertSameProduct(bare, decoded.get(1));
+    }
+
+    @Test
+    void deltaRoundTrip() throws Exception {
+        ProductDelta delta = new ProductDelta(99, 7, false, List.of(product(4, "p", 10)), List.of(5L, 6L));
+        ProductDelta decoded = roundTrip(delta);
+        assertEquals(99, decoded.getEpoch());
+        assertEquals(7, decoded.getVersion());
+        assertFalse(decoded.isFull());
+        assertSameProduct(delta.getUpserts().get(0), decoded.getUpserts().get(0));
+        assertEquals(List.of(5L, 6L), decoded.getRemovedIds());
+    }
+
+    @Test
+    void unknownTagIsRejected() {
+        byte[] payload = {100};
+        assertThrows(StreamCorruptedException.class, () -> BinaryCodec.INSTANCE.decode(payload, 0, payload.length));
+    }
+
+    @Test
+    void negativeListSizeIsRejected() throws Exception {
+        byte[] payload = BinaryCodec.INSTANCE.encode(new ProductDelta(1, 1, false, List.of(), List.of()));
+        // Последний байт - число удаленных id; подменяем его на varint со значением -1
+        byte[] corrupted = new byte[payload.length + 4];
+        System.arraycopy(payload, 0, corrupted, 0, payload.length - 1);
+        byte[] minusOne = {(byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0x0f};
+        System.arraycopy(minusOne, 0, corrupted, payload.length - 1, minusOne.length);
+        assertThrows(StreamCorruptedException.class,
+                () -> BinaryCodec.INSTANCE.decode(corrupted, 0, corrupted.length));
+    }
+
+    // Кадр в несколько байт объявляет около 64M аргументов: отказ до выделения массива
+    @Test
+    void hugeCountInShortFrameIsRejected() throws Exception {
+        byte[] header = BinaryCodec.INSTANCE.encode(new CommandRequest("add", null, null));
+        // Теги и поля до массива аргументов: тег, correlationId и имя команды
+        int argsOffset = 1 + 1 + 1 + "add".length();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.write(header, 0, argsOffset);
+        BinaryIO.writeVarInt(out, 64 * 1024 * 1024);
+        byte[] args = bytes.toByteArray();
+        assertThrows(StreamCorruptedException.class, () -> BinaryCodec.INSTANCE.decode(args, 0, args.length));
+
+        bytes.reset();
+        out.writeByte(3);
+        BinaryIO.writeVarInt(out, 64 * 1024 * 1024);
+        byte[] string = bytes.toByteArray();
+        assertThrows(StreamCorruptedException.class, () -> BinaryCodec.INSTANCE.decode(string, 0, string.length));
+    }
+
+    @Test
+    void invalidProductFieldsAreRejectedAsCorruption() throws Exception {
+        byte[] valid = BinaryCodec.INSTANCE.encode(product(1, "p", 10));
+        // После тега и флагов: id, имя, затем координата X в zigzag
+        int xOffset = 1 + 1 + 1 + 1 + "p".length();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.write(valid, 0, xOffset);
+        BinaryIO.writeSignedVarLong(out, -1000);
+        out.write(valid, xOffset + 1, valid.length - xOffset - 1);
+        byte[] coordinates = bytes.toByteArray();
+        assertThrows(StreamCorruptedException.class,
+                () -> BinaryCodec.INSTANCE.decode(coordinates, 0, coordinates.length));
+
+        // Часовой пояс передается строкой при первом упоминании
+        int zoneOffset = indexOf(valid, "UTC".getBytes(StandardCharsets.US_ASCII));
+        byte[] badZone = valid.clone();
+        badZone[zoneOffset] = '?';
+        assertThrows(StreamCorruptedException.class, () -> BinaryCodec.INSTANCE.decode(badZone, 0, badZone.length));
+    }
+
+    private static int indexOf(byte[] data, byte[] pattern) {
+        outer:
+        for (int i = 0; i + pattern.length <= data.length; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (data[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        throw new AssertionError("Нет подстроки в кадре");
+    }
+
+    @Test
+    void versionNegotiation() throws Exception {
+        assertEquals(Handshake.VERSION_BINARY, Handshake.chooseVersion(Handshake.MAGIC, 5));
+        assertEquals(Handshake.VERSION_SERIALIZATION, Handshake.chooseVersion(Handshake.MAGIC, 1));
+        assertThrows(StreamCorruptedException.class, () -> Handshake.chooseVersion(0, 2));
+        assertThrows(StreamCorruptedException.class, () -> Handshake.chooseVersion(Handshake.MAGIC, 0));
+        assertSame(BinaryCodec.INSTANCE, MessageCodec.forVersion(Handshake.VERSION_BINARY));
+    }
+}
@@ -0,0 +1,59 @@
+package org.example.network;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FrameCodecTest {
+
+    @Test
+    void frameRoundTrip() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        FrameCodec.writeFrame(new DataOutputStream(bytes), BinaryCodec.INSTANCE, new Response(true, "ok"));
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        Response response = (Response) FrameCodec.readFrame(in, BinaryCodec.INSTANCE);
+        assertTrue(response.isSuccess());
+        assertEquals("ok", response.getMessage());
+    }
+
+    @Test
+    void encodedFrameMatchesStreamFormat() throws Exception {
+        ByteBuffer frame = FrameCodec.encodeFrame(BinaryCodec.INSTANCE, "GET_PRODUCTS");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        FrameCodec.writeFrame(new DataOutputStream(bytes), BinaryCodec.INSTANCE, "GET_PRODUCTS");
+
+        byte[] encoded = new byte[frame.remaining()];
+        frame.get(encoded);
+        assertArrayEquals(bytes.toByteArray(), encoded);
+    }
+
+    @Test
+    void rejectsFrameAboveLimitBeforeReadingBody() {
+        // Заголовок обещает 1 МиБ, тела нет: отказ должен прийти до выделения буфера
+        byte[] header = ByteBuffer.allocate(FrameCodec.HEADER_SIZE).putInt(1024 * 1024).array();
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(header));
+        assertThrows(StreamCorruptedException.class, () -> FrameCodec.readFrame(in, BinaryCodec.INSTANCE, 64 * 1024));
+    }
+
+    @Test
+    void checkLengthBounds() throws IOException {
+        FrameCodec.checkLength(0);
+        FrameCodec.checkLength(FrameCodec.MAX_FRAME_SIZE);
+        FrameCodec.checkLength(100, 100);
+        assertThrows(StreamCorruptedException.class, () -> FrameCodec.checkLength(-1));
+        assertThrows(StreamCorruptedException.class, () -> FrameCodec.checkLength(FrameCodec.MAX_FRAME_SIZE + 1));
+        assertThrows(StreamCorruptedException.class, () -> FrameCodec.checkLength(101, 100));
+        // Предел больше общего максимума не расширяет его
+        assertThrows(StreamCorruptedException.class,
+                () -> FrameCodec.checkLength(FrameCodec.MAX_FRAME_SIZE + 1, Integer.MAX_VALUE));
+    }
+}
@@ -0,0 +1,73 @@
+package org.example.server;
+
+import org.example.data.User;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SessionTableTest {
+    private final User alice = new User(1, "alice", "hash");
+    private final User bob = new User(2, "bob", "hash");
+
+    @Test
+    void issuedTokenResolvesToUser() {
+        SessionTable table = new SessionTable(60_000);
+        String token = table.issue(alice);
+        assertSame(alice, table.resolve(token));
+        assertSame(alice, table.resolve(token));
+    }
+
+    @Test
+    void unknownAndMissingTokensAreRejected() {
+        SessionTable table = new SessionTable(60_000);
+        table.issue(alice);
+        assertNull(table.resolve(null));
+        assertNull(table.resolve("not-a-token"));
+    }
+
+    @Test
+    void tokensAreUniquePerIssue() {
+        SessionTable table = new SessionTable(60_000);
+        Set<String> tokens = new HashSet<>();
+        for (int i = 0; i < 100; i++) {
+            assertTrue(tokens.add(table.issue(i % 2 == 0 ? alice : bob)));
+        }
+        assertEquals(100, table.size());
+    }
+
+    @Test
+    void revokedTokenIsRejected() {
+        SessionTable table = new SessionTable(60_000);
+        String token = table.issue(alice);
+        String other = table.issue(bob);
+        table.revoke(token);
+        assertNull(table.resolve(token));
+        assertSame(bob, table.resolve(other));
+    }
+
+    @Test
+    void expiredSessionIsRejectedAndRemoved() throws InterruptedException {
+        SessionTable table = new SessionTable(20);
+        String token = table.issue(alice);
+        Thread.sleep(60);
+        assertNull(table.resolve(token));
+        assertEquals(0, table.size());
+    }
+
+    @Test
+    void expiredSessionsAreSweptOnIssue() throws InterruptedException {
+        SessionTable table = new SessionTable(20);
+        for (int i = 0; i < 10; i++) {
+            table.issue(alice);
+        }
+        Thread.sleep(60);
+        // Очистка проходит раз в несколько сотен выдач
+        for (int i = 0; i < 300; i++) {
+            table.issue(bob);
+        }
+        assertTrue(table.size() <= 300);
+    }
+}